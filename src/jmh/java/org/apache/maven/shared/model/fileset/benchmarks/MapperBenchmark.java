@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.shared.model.fileset.FileSet;
+import org.apache.maven.shared.model.fileset.Mapper;
+import org.apache.maven.shared.model.fileset.mappers.FileNameMapper;
+import org.apache.maven.shared.model.fileset.mappers.MapperException;
+import org.apache.maven.shared.model.fileset.mappers.MapperUtil;
+import org.apache.maven.shared.model.fileset.util.FileSetManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link FileSetManager#mapIncludedFiles(FileSet)} and {@link MapperUtil#getFileNameMapper(Mapper)} for each
+ * built-in mapper type.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapperBenchmark {
+    @Param({"identity", "flatten", "glob", "regexp", "merge", "package", "unpackage"})
+    String type;
+
+    @Param("20000")
+    int files;
+
+    private Path root;
+
+    private FileSet fileSet;
+
+    private Mapper mapper;
+
+    private final FileSetManager fileSetManager = new FileSetManager();
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        root = Files.createTempDirectory("mapper-benchmark");
+        TreeShape.WIDE.create(root, files);
+
+        mapper = new Mapper();
+        mapper.setType(type);
+        switch (type) {
+            case "glob":
+            case "package":
+                mapper.setFrom("*.java");
+                mapper.setTo("*.class");
+                break;
+            case "unpackage":
+                mapper.setFrom("*.class");
+                mapper.setTo("*.java");
+                break;
+            case "regexp":
+                mapper.setFrom("^(.*)\\.java$");
+                mapper.setTo("\\1.class");
+                break;
+            case "merge":
+                mapper.setTo("merged.txt");
+                break;
+            default:
+                break;
+        }
+
+        fileSet = TreeShape.fileSet(root);
+        fileSet.setMapper(mapper);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    @Benchmark
+    public Map<String, String> mapIncludedFiles() throws MapperException {
+        return fileSetManager.mapIncludedFiles(fileSet);
+    }
+
+    @Benchmark
+    public FileNameMapper getFileNameMapper() throws MapperException {
+        return MapperUtil.getFileNameMapper(mapper);
+    }
+}
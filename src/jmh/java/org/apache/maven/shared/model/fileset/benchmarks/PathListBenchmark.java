@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.shared.model.fileset.util.PathList;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the memory retained by scan results held as {@link String} array and as {@link PathList}. The paths mimic
+ * a source tree of a few hundred modules. The retained bytes are reported as secondary result
+ * <code>retainedBytes</code>; for strings they are estimated for compact strings and compressed references: a 24 byte
+ * string object, a byte array of 16 header bytes plus one byte per Latin-1 character aligned to 8 bytes, and a 4 byte
+ * array slot. Run with <code>-prof gc</code> to also compare the allocation while building.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathListBenchmark {
+    @Param("3000000")
+    int paths;
+
+    private List<String> names;
+
+    /**
+     * The memory retained by the result of the last invocation.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Retained {
+        public long retainedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retainedBytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void createNames() {
+        names = new ArrayList<>(paths);
+        for (int i = 0; names.size() < paths; i++) {
+            String module = "modules/module-" + (i % 300) + "/src/main/java/org/example/module" + (i % 300);
+            String pkg = module + "/package" + (i / 300 % 40) + "/";
+            for (int j = 0; j < 25 && names.size() < paths; j++) {
+                names.add(pkg + "GeneratedClass" + i + "_" + j + ".java");
+            }
+        }
+    }
+
+    @Benchmark
+    public String[] stringArray(Retained retained) {
+        String[] array = names.toArray(new String[0]);
+        for (String name : array) {
+            retained.retainedBytes += 24 + ((16 + name.length() + 7) & ~7) + 4;
+        }
+        return array;
+    }
+
+    @Benchmark
+    public PathList pathList(Retained retained) {
+        PathList.Builder builder = new PathList.Builder();
+        for (String name : names) {
+            builder.add(name);
+        }
+        PathList list = builder.build();
+        retained.retainedBytes += list.getEncodedSize();
+        return list;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.maven.shared.model.fileset.FileSet;
+
+/**
+ * The shapes of the synthetic directory trees the benchmarks run on.
+ */
+public enum TreeShape {
+    /**
+     * A few directories holding many files each.
+     */
+    WIDE {
+        @Override
+        void create(Path root, int files) throws IOException {
+            createWide(root, files);
+        }
+    },
+
+    /**
+     * Long chains of nested directories holding a few files per level.
+     */
+    DEEP {
+        @Override
+        void create(Path root, int files) throws IOException {
+            int chainDepth = 50;
+            int created = 0;
+            for (int chain = 0; created < files; chain++) {
+                Path dir = root.resolve("chain" + chain);
+                for (int level = 0; level < chainDepth && created < files; level++) {
+                    dir = dir.resolve("level" + level);
+                    Files.createDirectories(dir);
+                    for (int i = 0; i < FILES_PER_LEVEL && created < files; i++, created++) {
+                        createFile(dir, i);
+                    }
+                }
+            }
+        }
+    },
+
+    /**
+     * A wide tree in which every directory also holds symbolic links to a sibling directory and to some files.
+     */
+    SYMLINK_HEAVY {
+        @Override
+        void create(Path root, int files) throws IOException {
+            createWide(root, files / 2);
+            int dirs = directoryCount(files / 2);
+            int created = files / 2;
+            for (int d = 0; d < dirs; d++) {
+                Path dir = root.resolve("dir" + d);
+                Files.createSymbolicLink(dir.resolve("sibling-link"), root.resolve("dir" + ((d + 1) % dirs)));
+                for (int i = 0; created < files && i < (files / 2) / dirs; i++, created++) {
+                    Files.createSymbolicLink(dir.resolve("link-" + fileName(i)), dir.resolve(fileName(i)));
+                }
+            }
+        }
+    },
+
+    /**
+     * A small wide tree next to large subtrees which are excluded by the benchmark file-set or the default excludes.
+     */
+    EXCLUDE_HEAVY {
+        @Override
+        void create(Path root, int files) throws IOException {
+            createWide(root.resolve("src"), files / 10);
+            int excluded = files - files / 10;
+            createWide(root.resolve("node_modules"), excluded / 3);
+            createWide(root.resolve("target"), excluded / 3);
+            createWide(root.resolve(".git"), excluded - 2 * (excluded / 3));
+        }
+    };
+
+    private static final int FILES_PER_LEVEL = 4;
+
+    private static final String[] EXTENSIONS = {".java", ".xml", ".txt", ".properties"};
+
+    /**
+     * Create a tree of this shape holding approximately the given number of files.
+     *
+     * @param root the root directory, created if missing
+     * @param files the number of files to create
+     * @throws IOException if the tree cannot be created
+     */
+    abstract void create(Path root, int files) throws IOException;
+
+    /**
+     * @param root the root directory of the tree
+     * @return a file-set including everything but build output and dependencies below the root
+     */
+    static FileSet fileSet(Path root) {
+        FileSet fileSet = new FileSet();
+        fileSet.setDirectory(root.toString());
+        fileSet.addInclude("**/*");
+        fileSet.addExclude("**/node_modules/**");
+        fileSet.addExclude("**/target/**");
+        return fileSet;
+    }
+
+    private static void createWide(Path root, int files) throws IOException {
+        int dirs = directoryCount(files);
+        for (int d = 0; d < dirs; d++) {
+            Path dir = root.resolve("dir" + d);
+            Files.createDirectories(dir);
+            for (int i = d; i < files; i += dirs) {
+                createFile(dir, i / dirs);
+            }
+        }
+    }
+
+    private static int directoryCount(int files) {
+        return Math.max(1, (int) Math.sqrt(files) / 4);
+    }
+
+    private static void createFile(Path dir, int index) throws IOException {
+        Files.write(dir.resolve(fileName(index)), new byte[index % 512]);
+    }
+
+    private static String fileName(int index) {
+        return "file" + index + EXTENSIONS[index % EXTENSIONS.length];
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.shared.model.fileset.SetBase;
+
+/**
+ * Selects the entries matched by the name patterns of a file-set by their size, modification time and type, as given
+ * by the <code>minSize</code>, <code>maxSize</code>, <code>modifiedBefore</code>, <code>modifiedAfter</code> and
+ * <code>type</code> fields. Selection works on the attributes read during the scan, without accessing the file system.
+ */
+final class AttributeSelector {
+    private static final Pattern SIZE = Pattern.compile("(\\d+)\\s*([kmg]?)b?", Pattern.CASE_INSENSITIVE);
+
+    private enum Type {
+        FILE,
+        DIRECTORY,
+        SYMLINK
+    }
+
+    private final long minSize;
+
+    private final long maxSize;
+
+    private final long modifiedBefore;
+
+    private final long modifiedAfter;
+
+    private final Type type;
+
+    private AttributeSelector(long minSize, long maxSize, long modifiedBefore, long modifiedAfter, Type type) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.modifiedBefore = modifiedBefore;
+        this.modifiedAfter = modifiedAfter;
+        this.type = type;
+    }
+
+    /**
+     * @param set the file-set defining the selectors
+     * @param now the time relative durations are resolved against
+     * @return the selector, or <code>null</code> if the file-set does not define any
+     * @throws IllegalArgumentException if a selector value cannot be parsed
+     */
+    static AttributeSelector of(SetBase set, Instant now) {
+        if (set.getMinSize() == null
+                && set.getMaxSize() == null
+                && set.getModifiedBefore() == null
+                && set.getModifiedAfter() == null
+                && set.getType() == null) {
+            return null;
+        }
+
+        return new AttributeSelector(
+                parseSize("minSize", set.getMinSize(), 0),
+                parseSize("maxSize", set.getMaxSize(), Long.MAX_VALUE),
+                parseTime("modifiedBefore", set.getModifiedBefore(), now, Long.MAX_VALUE),
+                parseTime("modifiedAfter", set.getModifiedAfter(), now, Long.MIN_VALUE),
+                parseType(set.getType()));
+    }
+
+    /**
+     * @param attributes the attributes of the entry, following symbolic links
+     * @param linkAttributes the attributes of the entry itself
+     * @return <code>true</code> if the entry is selected
+     */
+    boolean isSelected(BasicFileAttributes attributes, BasicFileAttributes linkAttributes) {
+        if (type != null) {
+            switch (type) {
+                case FILE:
+                    if (!attributes.isRegularFile()) {
+                        return false;
+                    }
+                    break;
+                case DIRECTORY:
+                    if (!attributes.isDirectory()) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (!linkAttributes.isSymbolicLink()) {
+                        return false;
+                    }
+            }
+        }
+
+        if (attributes.isDirectory()) {
+            return true;
+        }
+
+        long size = attributes.size();
+        if (size < minSize || size > maxSize) {
+            return false;
+        }
+
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        return lastModified < modifiedBefore && lastModified > modifiedAfter;
+    }
+
+    private static long parseSize(String field, String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+
+        Matcher matcher = SIZE.matcher(value.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+
+        String unit = matcher.group(2).toLowerCase(Locale.ROOT);
+        int shift = unit.isEmpty() ? 0 : 10 * ("kmg".indexOf(unit) + 1);
+        try {
+            return Math.multiplyExact(Long.parseLong(matcher.group(1)), 1L << shift);
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value, e);
+        }
+    }
+
+    private static long parseTime(String field, String value, Instant now, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+
+        String trimmed = value.trim();
+        try {
+            if (trimmed.startsWith("P") || trimmed.startsWith("p")) {
+                return now.minus(Duration.parse(trimmed)).toEpochMilli();
+            }
+            return Instant.parse(trimmed).toEpochMilli();
+        } catch (DateTimeParseException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value, e);
+        }
+    }
+
+    private static Type parseType(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return Type.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid type: " + value + ", expected file, directory or symlink", e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+/**
+ * Defines how the included files of a file-set are materialized in its output directory.
+ *
+ * @see FileSetManager#copy(org.apache.maven.shared.model.fileset.FileSet, CopyMode)
+ */
+public enum CopyMode {
+    /**
+     * Copy the file contents.
+     */
+    COPY,
+
+    /**
+     * Create a hard link to the source file. Falls back to a copy if the output directory is located on another file
+     * store than the base directory, or if the file system does not support hard links.
+     */
+    HARD_LINK,
+
+    /**
+     * Create a symbolic link pointing to the source file, relative to the location of the link.
+     */
+    SYMBOLIC_LINK
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+/**
+ * Options of the comparison of two file-sets.
+ *
+ * @see FileSetManager#diff(org.apache.maven.shared.model.fileset.FileSet, org.apache.maven.shared.model.fileset.FileSet,
+ *      DiffOptions)
+ */
+public class DiffOptions {
+    private boolean compareContent = true;
+
+    private String algorithm = "SHA-256";
+
+    /**
+     * @return whether files of the same size but with different modification times are compared by content
+     */
+    public boolean isCompareContent() {
+        return compareContent;
+    }
+
+    /**
+     * Set whether files of the same size but with different modification times are compared by content. Otherwise
+     * they are reported as changed. Files of different sizes are always changed, and files of the same size and
+     * modification time are always unchanged. Enabled by default.
+     *
+     * @param compareContent whether to compare the content of files with different modification times
+     */
+    public void setCompareContent(boolean compareContent) {
+        this.compareContent = compareContent;
+    }
+
+    /**
+     * @return the name of the digest algorithm the content is compared with
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Set the name of the digest algorithm the content is compared with. <code>SHA-256</code> by default.
+     *
+     * @param algorithm the name of the digest algorithm
+     */
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The attributes of the entries below a base directory, by their paths relative to it, read once during an operation
+ * which visits the entries several times, e.g. a deletion scanning the base directory more than once before deleting
+ * the entries. The attributes are never refreshed, so a cache must not outlive the operation it was created for.
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+final class FileAttributeCache {
+    private static final Entry MISSING = new Entry(null, null, true);
+
+    private final Path basedir;
+
+    private final ConcurrentMap<String, Entry> entries;
+
+    /**
+     * @param basedir the base directory of the relative paths
+     */
+    FileAttributeCache(Path basedir) {
+        this(basedir, true);
+    }
+
+    /**
+     * @param basedir the base directory of the relative paths
+     * @param retain whether to keep the attributes, or to read them anew each time, which bounds the memory used
+     */
+    FileAttributeCache(Path basedir, boolean retain) {
+        this.basedir = basedir;
+        this.entries = retain ? new ConcurrentHashMap<>() : null;
+    }
+
+    Path getBasedir() {
+        return basedir;
+    }
+
+    /**
+     * @param name a path relative to the base directory, empty for the base directory
+     * @return the absolute path
+     */
+    Path resolve(String name) {
+        return name.isEmpty() ? basedir : basedir.resolve(name);
+    }
+
+    /**
+     * @param name a path relative to the base directory, empty for the base directory
+     * @return the attributes of the entry itself, or <code>null</code> if it does not exist
+     */
+    BasicFileAttributes get(String name) {
+        return get(name, resolve(name), BasicFileAttributes.class);
+    }
+
+    /**
+     * @param name a path relative to the base directory, empty for the base directory
+     * @return the attributes of the entry, following symbolic links, or <code>null</code> if it does not exist or is
+     *         a dangling symbolic link
+     */
+    BasicFileAttributes getTarget(String name) {
+        return getTarget(name, resolve(name), BasicFileAttributes.class);
+    }
+
+    /**
+     * @param name a path relative to the base directory, empty for the base directory
+     * @param path the absolute path of the entry
+     * @param type the type of the attributes
+     * @return the attributes of the entry itself, or <code>null</code> if it does not exist
+     */
+    BasicFileAttributes get(String name, Path path, Class<? extends BasicFileAttributes> type) {
+        return entry(name, path, type).attributes;
+    }
+
+    /**
+     * @param name a path relative to the base directory, empty for the base directory
+     * @param path the absolute path of the entry
+     * @param type the type of the attributes
+     * @return the attributes of the entry, following symbolic links, or <code>null</code> if it does not exist or is
+     *         a dangling symbolic link
+     */
+    BasicFileAttributes getTarget(String name, Path path, Class<? extends BasicFileAttributes> type) {
+        Entry entry = entry(name, path, type);
+        if (entry.attributes == null || !entry.attributes.isSymbolicLink()) {
+            return entry.attributes;
+        }
+        if (entry.targetRead && (entry.target == null || type.isInstance(entry.target))) {
+            return entry.target;
+        }
+
+        Entry read = new Entry(entry.attributes, read(path, type), true);
+        if (entries != null) {
+            entries.put(name, read);
+        }
+        return read.target;
+    }
+
+    private Entry entry(String name, Path path, Class<? extends BasicFileAttributes> type) {
+        Entry entry = entries != null ? entries.get(name) : null;
+        if (entry == null || (entry.attributes != null && !type.isInstance(entry.attributes))) {
+            BasicFileAttributes attributes = read(path, type, LinkOption.NOFOLLOW_LINKS);
+            entry = attributes != null ? new Entry(attributes, null, false) : MISSING;
+            if (entries != null) {
+                entries.put(name, entry);
+            }
+        }
+        return entry;
+    }
+
+    private static BasicFileAttributes read(
+            Path path, Class<? extends BasicFileAttributes> type, LinkOption... options) {
+        try {
+            return Files.readAttributes(path, type, options);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static final class Entry {
+        private final BasicFileAttributes attributes;
+
+        /**
+         * The attributes of the target of a symbolic link, once read.
+         */
+        private final BasicFileAttributes target;
+
+        private final boolean targetRead;
+
+        Entry(BasicFileAttributes attributes, BasicFileAttributes target, boolean targetRead) {
+            this.attributes = attributes;
+            this.target = target;
+            this.targetRead = targetRead;
+        }
+    }
+}
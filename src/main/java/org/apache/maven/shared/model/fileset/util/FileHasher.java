@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Computes content digests of single files, read in chunks through a heap buffer. Digests are memoized by path and
+ * algorithm, and reused as long as the size, the modification time at the full precision of the file system, and the
+ * file key where available are unchanged. The least recently used digests are dropped beyond a maximum number, so
+ * that a long-lived instance does not grow with every file it has ever hashed.
+ */
+final class FileHasher {
+    /**
+     * The default maximum number of memoized digests.
+     */
+    static final int DEFAULT_MAX_ENTRIES = 64 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Map<Key, Memo> cache;
+
+    FileHasher() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries the maximum number of memoized digests
+     */
+    FileHasher(int maxEntries) {
+        this.cache = new LinkedHashMap<Key, Memo>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Memo> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Verifies that the given digest algorithm is available.
+     *
+     * @param algorithm the name of the digest algorithm, e.g. <code>SHA-256</code>
+     * @throws IllegalArgumentException if the algorithm is not supported by any provider
+     */
+    static void checkAlgorithm(String algorithm) {
+        newDigest(algorithm);
+    }
+
+    /**
+     * Returns the digest of the given file, using already known attributes for the memoization check.
+     *
+     * @param file the regular file to hash
+     * @param attrs the attributes of the file, as read during traversal
+     * @param algorithm the name of the digest algorithm
+     * @return the digest bytes
+     * @throws IOException if the file cannot be read
+     */
+    byte[] digest(Path file, BasicFileAttributes attrs, String algorithm) throws IOException {
+        Key key = new Key(file.toAbsolutePath().normalize(), algorithm);
+        long size = attrs.size();
+        FileTime lastModified = attrs.lastModifiedTime();
+        Object fileKey = attrs.fileKey();
+
+        Memo memo;
+        synchronized (cache) {
+            memo = cache.get(key);
+        }
+        if (memo != null
+                && memo.size == size
+                && memo.lastModified.equals(lastModified)
+                && Objects.equals(memo.fileKey, fileKey)) {
+            return memo.digest.clone();
+        }
+
+        byte[] digest = compute(file, size, algorithm);
+        synchronized (cache) {
+            // replaces the digest of a previous version of the file
+            cache.put(key, new Memo(size, lastModified, fileKey, digest));
+        }
+
+        return digest.clone();
+    }
+
+    /**
+     * @return the number of memoized digests
+     */
+    int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static byte[] compute(Path file, long size, String algorithm) throws IOException {
+        MessageDigest md = newDigest(algorithm);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(size, 1)));
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        return md.digest();
+    }
+
+    static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm, e);
+        }
+    }
+
+    private static final class Key {
+        private final Path path;
+
+        private final String algorithm;
+
+        Key(Path path, String algorithm) {
+            this.path = path;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return path.equals(other.path) && algorithm.equals(other.algorithm);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + algorithm.hashCode();
+        }
+    }
+
+    private static final class Memo {
+        private final long size;
+
+        private final FileTime lastModified;
+
+        /**
+         * The file key, telling apart a file replaced by another one, or <code>null</code> if not available.
+         */
+        private final Object fileKey;
+
+        private final byte[] digest;
+
+        Memo(long size, FileTime lastModified, Object fileKey, byte[] digest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.digest = digest;
+        }
+    }
+}
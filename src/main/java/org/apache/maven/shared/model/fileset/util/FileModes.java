@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Conversions of the octal file and directory modes of file-sets.
+ */
+final class FileModes {
+    /**
+     * The permissions in the order of their bits, from the most significant to the least.
+     */
+    private static final PosixFilePermission[] PERMISSIONS = {
+        PosixFilePermission.OWNER_READ,
+        PosixFilePermission.OWNER_WRITE,
+        PosixFilePermission.OWNER_EXECUTE,
+        PosixFilePermission.GROUP_READ,
+        PosixFilePermission.GROUP_WRITE,
+        PosixFilePermission.GROUP_EXECUTE,
+        PosixFilePermission.OTHERS_READ,
+        PosixFilePermission.OTHERS_WRITE,
+        PosixFilePermission.OTHERS_EXECUTE
+    };
+
+    private FileModes() {}
+
+    /**
+     * Parse an octal permission string like <code>0644</code>.
+     *
+     * @param mode the octal mode, may be <code>null</code>
+     * @param defaultMode the mode used if none is given
+     * @return the permission bits
+     */
+    static int parseMode(String mode, int defaultMode) {
+        if (mode == null || mode.trim().isEmpty()) {
+            return defaultMode;
+        }
+        try {
+            return Integer.parseInt(mode.trim(), 8) & 07777;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid octal mode: " + mode, e);
+        }
+    }
+
+    /**
+     * @param mode the permission bits, of which setuid, setgid and sticky are ignored
+     * @return the permissions
+     */
+    static Set<PosixFilePermission> toPermissions(int mode) {
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        for (int i = 0; i < PERMISSIONS.length; i++) {
+            if ((mode & (0400 >> i)) != 0) {
+                permissions.add(PERMISSIONS[i]);
+            }
+        }
+        return permissions;
+    }
+}
@@ -0,0 +1,697 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.maven.shared.model.fileset.FileSet;
+import org.apache.maven.shared.model.fileset.Mapper;
+import org.apache.maven.shared.model.fileset.mappers.MapperException;
+
+/**
+ * Writes the included entries of one or more file-sets directly into a ZIP archive. Entries are compressed in
+ * parallel into memory buffers, which spill to temporary files once they grow beyond a threshold, and are written in
+ * sorted entry name order, so the same input always produces the same archive. Modification times are recorded in
+ * UTC, and directories, which may not exist as such in the input, get the earliest time of the ZIP format. Files having
+ * a typical extension of already compressed content are stored without compression. The <code>fileMode</code> and
+ * <code>directoryMode</code> of each file-set are recorded as unix permissions of its entries.
+ *
+ * <p>Included files are placed at their mapped path below the <code>outputDirectory</code> of their file-set. If an
+ * entry name is produced by more than one file-set, the first one wins.</p>
+ */
+public class FileSetArchiver {
+    /**
+     * The extensions of files which are stored without compression by default.
+     */
+    public static final Set<String> DEFAULT_STORED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "7z", "bz2", "ear", "gif", "gz", "jar", "jpeg", "jpg", "mp3", "mp4", "ogg", "png", "tgz", "war", "webp",
+            "woff", "woff2", "xz", "z", "zip")));
+
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+
+    private static final int CENTRAL_FILE_HEADER = 0x02014b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+
+    private static final int ZIP64_EXTRA_FIELD = 0x0001;
+
+    private static final int UTF8_FLAG = 0x0800;
+
+    private static final int VERSION_DEFLATED = 20;
+
+    private static final int VERSION_ZIP64 = 45;
+
+    private static final int MADE_BY_UNIX = 3 << 8;
+
+    private static final int UNIX_FILE = 0100000;
+
+    private static final int UNIX_DIRECTORY = 040000;
+
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+
+    private static final int ZIP64_ENTRY_LIMIT = 0xFFFF;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The earliest time of the ZIP format, 1980-01-01T00:00:00Z, of directory entries without a fixed time.
+     */
+    private static final long DOS_EPOCH = 315532800000L;
+
+    private final FileSetManager fileSetManager;
+
+    private final List<FileSet> fileSets = new ArrayList<>();
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    private long spillThreshold = 8 * 1024 * 1024;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private FileTime lastModifiedTime;
+
+    private Set<String> storedExtensions = DEFAULT_STORED_EXTENSIONS;
+
+    /**
+     * Create a new archiver using a default {@link FileSetManager} to select the entries.
+     */
+    public FileSetArchiver() {
+        this(new FileSetManager());
+    }
+
+    /**
+     * Create a new archiver using the supplied manager to select the entries.
+     *
+     * @param fileSetManager the manager used to scan and map the file-sets
+     */
+    public FileSetArchiver(FileSetManager fileSetManager) {
+        this.fileSetManager = fileSetManager;
+    }
+
+    /**
+     * Add a file-set whose included directories and files are written to the archive.
+     *
+     * @param fileSet the file-set
+     */
+    public void addFileSet(FileSet fileSet) {
+        fileSets.add(fileSet);
+    }
+
+    /**
+     * @param compressionLevel the deflate level from 0 to 9, or -1 for the default level
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * @param spillThreshold the number of compressed bytes per entry kept in memory before spilling to a temporary file
+     */
+    public void setSpillThreshold(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * @param threads the number of entries compressed in parallel
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Use a fixed modification time for all entries instead of the modification times of the files, to create archives
+     * which do not depend on when their input has been written.
+     *
+     * @param lastModifiedTime the modification time of all entries, or <code>null</code> to use the file times
+     */
+    public void setLastModifiedTime(FileTime lastModifiedTime) {
+        this.lastModifiedTime = lastModifiedTime;
+    }
+
+    /**
+     * @param storedExtensions the lower case extensions of files which are stored without compression
+     */
+    public void setStoredExtensions(Set<String> storedExtensions) {
+        this.storedExtensions = storedExtensions;
+    }
+
+    /**
+     * Write the archive to the given file, replacing an existing file.
+     *
+     * @param archive the archive file
+     * @throws IOException if a file cannot be read or the archive cannot be written
+     * @throws MapperException if the mapper of a file-set cannot be created
+     */
+    public void createArchive(Path archive) throws IOException, MapperException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(archive), BUFFER_SIZE)) {
+            createArchive(out);
+        }
+    }
+
+    /**
+     * Write the archive to the given stream. The stream is not closed.
+     *
+     * @param out the stream to write the archive to
+     * @throws IOException if a file cannot be read or the archive cannot be written
+     * @throws MapperException if the mapper of a file-set cannot be created
+     */
+    public void createArchive(OutputStream out) throws IOException, MapperException {
+        List<Source> sources = collectSources();
+
+        ZipWriter writer = new ZipWriter(out);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, sources.size())), r -> {
+            Thread thread = new Thread(r, "fileset-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Deque<Future<Entry>> pending = new ArrayDeque<>();
+        int window = threads * 2;
+        int next = 0;
+        try {
+            while (next < sources.size() || !pending.isEmpty()) {
+                while (next < sources.size() && pending.size() < window) {
+                    Source source = sources.get(next++);
+                    pending.add(executor.submit(() -> prepare(source)));
+                }
+
+                Entry entry = await(pending.poll());
+                try {
+                    writer.write(entry);
+                } finally {
+                    entry.release();
+                }
+            }
+
+            writer.finish();
+        } finally {
+            for (Future<Entry> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Source> collectSources() throws MapperException {
+        Map<String, Source> sources = new TreeMap<>();
+
+        for (FileSet fileSet : fileSets) {
+            File basedir = new File(fileSet.getDirectory());
+            String prefix = toEntryPrefix(fileSet.getOutputDirectory());
+            int fileMode = FileModes.parseMode(fileSet.getFileMode(), 0644);
+            int directoryMode = FileModes.parseMode(fileSet.getDirectoryMode(), 0755);
+
+            if (isIdentityMapping(fileSet.getMapper())) {
+                for (String dir : fileSetManager.getIncludedDirectories(fileSet)) {
+                    if (!dir.isEmpty()) {
+                        addDirectories(sources, prefix + toEntryName(dir) + "/", directoryMode);
+                    }
+                }
+            }
+
+            for (Map.Entry<String, String> mapped :
+                    fileSetManager.mapIncludedFiles(fileSet).entrySet()) {
+                if (mapped.getValue() == null) {
+                    continue;
+                }
+
+                String name = prefix + toEntryName(mapped.getValue());
+                int slash = name.lastIndexOf('/');
+                if (slash > 0) {
+                    addDirectories(sources, name.substring(0, slash + 1), directoryMode);
+                }
+
+                sources.putIfAbsent(
+                        name, new Source(name, new File(basedir, mapped.getKey()).toPath(), UNIX_FILE | fileMode));
+            }
+        }
+
+        return new ArrayList<>(sources.values());
+    }
+
+    private static void addDirectories(Map<String, Source> sources, String name, int mode) {
+        int slash = name.indexOf('/');
+        while (slash > 0) {
+            String dir = name.substring(0, slash + 1);
+            sources.putIfAbsent(dir, new Source(dir, null, UNIX_DIRECTORY | mode));
+            slash = name.indexOf('/', slash + 1);
+        }
+    }
+
+    private Entry prepare(Source source) throws IOException {
+        if (source.file == null) {
+            long time = lastModifiedTime != null ? lastModifiedTime.toMillis() : DOS_EPOCH;
+            return new Entry(source, ZipEntry.STORED, 0, 0, time);
+        }
+
+        long time = lastModifiedTime != null
+                ? lastModifiedTime.toMillis()
+                : Files.getLastModifiedTime(source.file).toMillis();
+
+        if (isStored(source.name)) {
+            return stored(source, time);
+        }
+
+        CRC32 crc = new CRC32();
+        long size = 0;
+        SpillBuffer buffer = new SpillBuffer(spillThreshold);
+        Deflater deflater = new Deflater(compressionLevel, true);
+        try (InputStream in = Files.newInputStream(source.file);
+                DeflaterOutputStream deflated = new DeflaterOutputStream(buffer, deflater, BUFFER_SIZE)) {
+            byte[] bytes = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(bytes)) != -1) {
+                crc.update(bytes, 0, read);
+                deflated.write(bytes, 0, read);
+                size += read;
+            }
+        } catch (IOException e) {
+            buffer.release();
+            throw e;
+        } finally {
+            deflater.end();
+        }
+
+        if (buffer.size() >= size) {
+            // incompressible content, store it instead
+            buffer.release();
+            return stored(source, time);
+        }
+
+        Entry entry = new Entry(source, ZipEntry.DEFLATED, crc.getValue(), size, time);
+        entry.data = buffer;
+        return entry;
+    }
+
+    private static Entry stored(Source source, long time) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream in = Files.newInputStream(source.file)) {
+            byte[] bytes = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(bytes)) != -1) {
+                crc.update(bytes, 0, read);
+                size += read;
+            }
+        }
+        return new Entry(source, ZipEntry.STORED, crc.getValue(), size, time);
+    }
+
+    private boolean isStored(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > name.lastIndexOf('/')
+                && storedExtensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static Entry await(Future<Entry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing entries", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to compress entry", e.getCause());
+        }
+    }
+
+    private static boolean isIdentityMapping(Mapper mapper) {
+        return mapper == null || (mapper.getClassname() == null && "identity".equals(mapper.getType()));
+    }
+
+    private static String toEntryName(String path) {
+        String name = path.replace('\\', '/');
+        while (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        return name;
+    }
+
+    private static String toEntryPrefix(String outputDirectory) {
+        if (outputDirectory == null) {
+            return "";
+        }
+        String prefix = toEntryName(outputDirectory);
+        while (prefix.startsWith("./")) {
+            prefix = prefix.substring(2);
+        }
+        if (prefix.isEmpty() || prefix.equals(".")) {
+            return "";
+        }
+        return prefix.endsWith("/") ? prefix : prefix + "/";
+    }
+
+    /**
+     * An entry to be written, as collected from the file-sets.
+     */
+    private static final class Source {
+        private final String name;
+
+        private final Path file;
+
+        private final int mode;
+
+        Source(String name, Path file, int mode) {
+            this.name = name;
+            this.file = file;
+            this.mode = mode;
+        }
+    }
+
+    /**
+     * A prepared entry, with its compressed data if deflated. Stored entries are copied from their file when written.
+     */
+    private static final class Entry {
+        private final Source source;
+
+        private final int method;
+
+        private final long crc;
+
+        private final long size;
+
+        private final long time;
+
+        private SpillBuffer data;
+
+        private long offset;
+
+        private long compressedSize;
+
+        Entry(Source source, int method, long crc, long size, long time) {
+            this.source = source;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.time = time;
+        }
+
+        void release() {
+            if (data != null) {
+                data.release();
+            }
+        }
+    }
+
+    /**
+     * An output stream keeping its content in memory up to a threshold, and in a temporary file beyond it.
+     */
+    private static final class SpillBuffer extends OutputStream {
+        private final long threshold;
+
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+        private Path spillFile;
+
+        private OutputStream spill;
+
+        private long size;
+
+        SpillBuffer(long threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (spill == null && size + len > threshold) {
+                spillFile = Files.createTempFile("fileset-archiver", ".tmp");
+                spill = new BufferedOutputStream(Files.newOutputStream(spillFile), BUFFER_SIZE);
+                memory.writeTo(spill);
+                memory = null;
+            }
+            if (spill != null) {
+                spill.write(b, off, len);
+            } else {
+                memory.write(b, off, len);
+            }
+            size += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spill != null) {
+                spill.close();
+            }
+        }
+
+        long size() {
+            return size;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            if (spillFile != null) {
+                Files.copy(spillFile, out);
+            } else {
+                memory.writeTo(out);
+            }
+        }
+
+        void release() {
+            memory = null;
+            if (spillFile != null) {
+                try {
+                    if (spill != null) {
+                        spill.close();
+                    }
+                    Files.deleteIfExists(spillFile);
+                } catch (IOException e) {
+                    spillFile.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes entries in the ZIP format, switching to ZIP64 records where sizes, offsets or the entry count require it.
+     */
+    private static final class ZipWriter {
+        private final CountingOutputStream out;
+
+        private final List<Entry> entries = new ArrayList<>();
+
+        ZipWriter(OutputStream out) {
+            this.out = new CountingOutputStream(out);
+        }
+
+        void write(Entry entry) throws IOException {
+            byte[] name = entry.source.name.getBytes(StandardCharsets.UTF_8);
+            entry.offset = out.count;
+            entry.compressedSize = entry.data != null ? entry.data.size() : entry.size;
+
+            boolean zip64 = entry.size >= ZIP64_LIMIT || entry.compressedSize >= ZIP64_LIMIT;
+
+            writeInt(LOCAL_FILE_HEADER);
+            writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFLATED);
+            writeShort(UTF8_FLAG);
+            writeShort(entry.method);
+            writeInt(toDosTime(entry.time));
+            writeInt((int) entry.crc);
+            writeInt(zip64 ? (int) ZIP64_LIMIT : (int) entry.compressedSize);
+            writeInt(zip64 ? (int) ZIP64_LIMIT : (int) entry.size);
+            writeShort(name.length);
+            writeShort(zip64 ? 20 : 0);
+            out.write(name);
+            if (zip64) {
+                writeShort(ZIP64_EXTRA_FIELD);
+                writeShort(16);
+                writeLong(entry.size);
+                writeLong(entry.compressedSize);
+            }
+
+            if (entry.data != null) {
+                entry.data.writeTo(out);
+            } else if (entry.source.file != null) {
+                long copied = Files.copy(entry.source.file, out);
+                if (copied != entry.size) {
+                    throw new IOException("File " + entry.source.file + " changed while it was archived");
+                }
+            }
+
+            entries.add(entry);
+        }
+
+        void finish() throws IOException {
+            long centralDirectoryOffset = out.count;
+
+            for (Entry entry : entries) {
+                byte[] name = entry.source.name.getBytes(StandardCharsets.UTF_8);
+                boolean sizes64 = entry.size >= ZIP64_LIMIT || entry.compressedSize >= ZIP64_LIMIT;
+                boolean offset64 = entry.offset >= ZIP64_LIMIT;
+                int extraLength = (sizes64 ? 16 : 0) + (offset64 ? 8 : 0);
+                boolean directory = entry.source.file == null;
+
+                writeInt(CENTRAL_FILE_HEADER);
+                writeShort(MADE_BY_UNIX | (extraLength > 0 ? VERSION_ZIP64 : VERSION_DEFLATED));
+                writeShort(extraLength > 0 ? VERSION_ZIP64 : VERSION_DEFLATED);
+                writeShort(UTF8_FLAG);
+                writeShort(entry.method);
+                writeInt(toDosTime(entry.time));
+                writeInt((int) entry.crc);
+                writeInt(sizes64 ? (int) ZIP64_LIMIT : (int) entry.compressedSize);
+                writeInt(sizes64 ? (int) ZIP64_LIMIT : (int) entry.size);
+                writeShort(name.length);
+                writeShort(extraLength > 0 ? extraLength + 4 : 0);
+                writeShort(0); // comment length
+                writeShort(0); // disk number
+                writeShort(0); // internal attributes
+                writeInt((entry.source.mode << 16) | (directory ? 0x10 : 0));
+                writeInt(offset64 ? (int) ZIP64_LIMIT : (int) entry.offset);
+                out.write(name);
+                if (extraLength > 0) {
+                    writeShort(ZIP64_EXTRA_FIELD);
+                    writeShort(extraLength);
+                    if (sizes64) {
+                        writeLong(entry.size);
+                        writeLong(entry.compressedSize);
+                    }
+                    if (offset64) {
+                        writeLong(entry.offset);
+                    }
+                }
+            }
+
+            long centralDirectoryEnd = out.count;
+            long centralDirectorySize = centralDirectoryEnd - centralDirectoryOffset;
+            boolean zip64 = entries.size() >= ZIP64_ENTRY_LIMIT
+                    || centralDirectoryOffset >= ZIP64_LIMIT
+                    || centralDirectorySize >= ZIP64_LIMIT;
+
+            if (zip64) {
+                writeInt(ZIP64_END_OF_CENTRAL_DIRECTORY);
+                writeLong(44);
+                writeShort(MADE_BY_UNIX | VERSION_ZIP64);
+                writeShort(VERSION_ZIP64);
+                writeInt(0); // disk number
+                writeInt(0); // disk with central directory
+                writeLong(entries.size());
+                writeLong(entries.size());
+                writeLong(centralDirectorySize);
+                writeLong(centralDirectoryOffset);
+
+                writeInt(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR);
+                writeInt(0);
+                writeLong(centralDirectoryEnd);
+                writeInt(1);
+            }
+
+            int count = zip64 ? ZIP64_ENTRY_LIMIT : entries.size();
+            writeInt(END_OF_CENTRAL_DIRECTORY);
+            writeShort(0);
+            writeShort(0);
+            writeShort(count);
+            writeShort(count);
+            writeInt(zip64 ? (int) ZIP64_LIMIT : (int) centralDirectorySize);
+            writeInt(zip64 ? (int) ZIP64_LIMIT : (int) centralDirectoryOffset);
+            writeShort(0); // comment length
+
+            out.flush();
+        }
+
+        private void writeShort(int value) throws IOException {
+            out.write(value & 0xFF);
+            out.write((value >>> 8) & 0xFF);
+        }
+
+        private void writeInt(int value) throws IOException {
+            writeShort(value);
+            writeShort(value >>> 16);
+        }
+
+        private void writeLong(long value) throws IOException {
+            writeInt((int) value);
+            writeInt((int) (value >>> 32));
+        }
+
+        private static int toDosTime(long time) {
+            LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneOffset.UTC);
+            if (dateTime.getYear() < 1980) {
+                return (1 << 21) | (1 << 16);
+            }
+            return (dateTime.getYear() - 1980) << 25
+                    | dateTime.getMonthValue() << 21
+                    | dateTime.getDayOfMonth() << 16
+                    | dateTime.getHour() << 11
+                    | dateTime.getMinute() << 5
+                    | dateTime.getSecond() >> 1;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
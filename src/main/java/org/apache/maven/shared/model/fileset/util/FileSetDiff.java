@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The differences between the entries included by two file-sets. Paths are relative to the respective base
+ * directories, and sorted.
+ *
+ * @see FileSetManager#diff(org.apache.maven.shared.model.fileset.FileSet, org.apache.maven.shared.model.fileset.FileSet,
+ *      DiffOptions)
+ */
+public final class FileSetDiff {
+    private final List<String> onlyLeft;
+
+    private final List<String> onlyRight;
+
+    private final List<String> changed;
+
+    FileSetDiff(List<String> onlyLeft, List<String> onlyRight, List<String> changed) {
+        this.onlyLeft = Collections.unmodifiableList(onlyLeft);
+        this.onlyRight = Collections.unmodifiableList(onlyRight);
+        this.changed = Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * @return the files and directories only included by the left file-set
+     */
+    public List<String> getOnlyLeft() {
+        return onlyLeft;
+    }
+
+    /**
+     * @return the files and directories only included by the right file-set
+     */
+    public List<String> getOnlyRight() {
+        return onlyRight;
+    }
+
+    /**
+     * @return the entries included by both file-sets which differ, in type or file content
+     */
+    public List<String> getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return <code>true</code> if both file-sets include the same entries with the same content
+     */
+    public boolean isEmpty() {
+        return onlyLeft.isEmpty() && onlyRight.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "only left: " + onlyLeft.size() + ", only right: " + onlyRight.size() + ", changed: " + changed.size();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.nio.file.Path;
+
+import org.apache.maven.shared.model.fileset.FileSet;
+
+/**
+ * Emits Java Flight Recorder events for the work of a {@link FileSetManager}. This is the implementation used on Java
+ * versions without JFR support, which records nothing. The multi-release JAR holds a replacement for Java 11 and
+ * later in <code>META-INF/versions/11</code>.
+ *
+ * <p>The <code>begin</code> methods return <code>null</code> when the event is not recorded. The returned object is
+ * only meant to be passed to the matching <code>end</code> method.</p>
+ */
+final class FileSetEvents {
+    private FileSetEvents() {
+        // no op
+    }
+
+    /**
+     * @return the started scan event, or <code>null</code> if not recorded
+     */
+    static Object beginScan() {
+        return null;
+    }
+
+    /**
+     * @param event the event returned by {@link #beginScan()}
+     * @param fileSet the scanned file-set
+     * @param basedir the scanned base directory
+     * @param visitedDirectories the number of listed directories
+     * @param includedEntries the number of included files and directories
+     * @param excludedEntries the number of excluded files and directories
+     */
+    static void endScan(
+            Object event,
+            FileSet fileSet,
+            Path basedir,
+            int visitedDirectories,
+            int includedEntries,
+            int excludedEntries) {
+        // no op
+    }
+
+    /**
+     * @return the started delete event, or <code>null</code> if not recorded
+     */
+    static Object beginDelete() {
+        return null;
+    }
+
+    /**
+     * @param event the event returned by {@link #beginDelete()}
+     * @param basedir the base directory the deletion works on
+     * @param deletablePaths the number of files and directories to delete
+     */
+    static void endDelete(Object event, Path basedir, int deletablePaths) {
+        // no op
+    }
+
+    /**
+     * @return the started mapping event, or <code>null</code> if not recorded
+     */
+    static Object beginMapping() {
+        return null;
+    }
+
+    /**
+     * @param event the event returned by {@link #beginMapping()}
+     * @param fileSet the file-set whose included files are mapped
+     * @param basedir the base directory of the mapped files
+     * @param mappedFiles the number of mapped files
+     */
+    static void endMapping(Object event, FileSet fileSet, Path basedir, int mappedFiles) {
+        // no op
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The content fingerprint of the files selected by a file-set. The tree digest combines the digests of all included
+ * files in sorted relative path order, so it is stable across file system iteration orders and platforms.
+ *
+ * @see FileSetManager#fingerprint(org.apache.maven.shared.model.fileset.FileSet, String)
+ */
+public final class FileSetFingerprint {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String algorithm;
+
+    private final byte[] digest;
+
+    private final SortedMap<String, byte[]> fileDigests;
+
+    /**
+     * Combine the given per-file digests into a tree digest.
+     *
+     * @param algorithm the digest algorithm used for the files and the tree
+     * @param fileDigests the file digests, keyed by relative path using <code>/</code> as separator
+     */
+    FileSetFingerprint(String algorithm, Map<String, byte[]> fileDigests) {
+        this.algorithm = algorithm;
+        this.fileDigests = Collections.unmodifiableSortedMap(new TreeMap<>(fileDigests));
+
+        MessageDigest md = FileHasher.newDigest(algorithm);
+        for (Map.Entry<String, byte[]> entry : this.fileDigests.entrySet()) {
+            md.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(entry.getValue());
+        }
+        this.digest = md.digest();
+    }
+
+    /**
+     * @return the digest algorithm
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the tree digest over all included files
+     */
+    public byte[] getDigest() {
+        return digest.clone();
+    }
+
+    /**
+     * @return the tree digest as lower case hex string
+     */
+    public String getDigestAsHex() {
+        return toHex(digest);
+    }
+
+    /**
+     * @return a copy of the per-file digests in sorted order, keyed by relative path using <code>/</code> as separator
+     */
+    public SortedMap<String, byte[]> getFileDigests() {
+        SortedMap<String, byte[]> copy = new TreeMap<>();
+        for (Map.Entry<String, byte[]> entry : fileDigests.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().clone());
+        }
+        return Collections.unmodifiableSortedMap(copy);
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FileSetFingerprint)) {
+            return false;
+        }
+        FileSetFingerprint other = (FileSetFingerprint) obj;
+        return algorithm.equals(other.algorithm) && Arrays.equals(digest, other.digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * algorithm.hashCode() + Arrays.hashCode(digest);
+    }
+
+    @Override
+    public String toString() {
+        return algorithm + ":" + getDigestAsHex();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import org.apache.maven.shared.model.fileset.FileSet;
+
+/**
+ * Receives progress and metrics of the operations of a {@link FileSetManager}, e.g. to export them to a metrics
+ * registry. All methods have empty default implementations, so implementations only override what they need.
+ * Callbacks may be invoked concurrently from several threads and should return quickly.
+ *
+ * <p>When no listener is registered, the manager neither computes timings nor collects any of the reported values.</p>
+ *
+ * @see FileSetManager#setListener(FileSetListener)
+ */
+public interface FileSetListener {
+    /**
+     * The phases of the manager operations which are timed.
+     */
+    enum Phase {
+        /**
+         * Walking the base directory and matching the entries against the rules.
+         */
+        SCAN,
+
+        /**
+         * Applying the mapper to the included files.
+         */
+        MAP,
+
+        /**
+         * Deleting the deletable entries, after they have been found by scanning.
+         */
+        DELETE,
+
+        /**
+         * Copying or linking included files to the output directory.
+         */
+        COPY,
+
+        /**
+         * Hashing the content of included files.
+         */
+        HASH,
+
+        /**
+         * Applying the file and directory modes to the included entries.
+         */
+        PERMISSIONS
+    }
+
+    /**
+     * A scan of the base directory of the file-set starts.
+     *
+     * @param fileSet the file-set being scanned
+     */
+    default void scanStarted(FileSet fileSet) {}
+
+    /**
+     * A directory is listed during a scan.
+     *
+     * @param fileSet the file-set being scanned
+     * @param relativePath the path of the directory relative to the base directory, empty for the base directory
+     */
+    default void directoryVisited(FileSet fileSet, String relativePath) {}
+
+    /**
+     * A directory reached by following symbolic links is the same directory as one of its ancestors. It is not
+     * listed, neither by scans nor by deletions, which delete the symbolic link only.
+     *
+     * @param fileSet the file-set being scanned or deleted
+     * @param relativePath the path of the directory relative to the base directory
+     * @param ancestorPath the path of the ancestor relative to the base directory, empty for the base directory
+     */
+    default void cycleDetected(FileSet fileSet, String relativePath, String ancestorPath) {}
+
+    /**
+     * A scan of the base directory of the file-set has finished. Only the entries the scan has come across are
+     * counted: the entries below a directory excluded along with everything below it are not listed, unless the
+     * excluded entries are requested later, and neither are the entries which cannot be included.
+     *
+     * @param fileSet the file-set which has been scanned
+     * @param visitedDirectories the number of listed directories
+     * @param includedEntries the number of included files and directories
+     * @param excludedEntries the number of files and directories found which matched an include but also an exclude
+     *            rule, not counting the entries below the pruned directories
+     * @param prunedDirectories the number of directories which have not been listed, because they are excluded along
+     *            with everything below them
+     */
+    default void scanFinished(
+            FileSet fileSet, int visitedDirectories, int includedEntries, int excludedEntries, int prunedDirectories) {}
+
+    /**
+     * A phase of an operation has finished.
+     *
+     * @param fileSet the file-set the operation works on
+     * @param phase the finished phase
+     * @param nanos the duration of the phase in nanoseconds
+     */
+    default void phaseFinished(FileSet fileSet, Phase phase, long nanos) {}
+
+    /**
+     * Files have been deleted.
+     *
+     * @param fileSet the file-set the deletion works on
+     * @param bytes the total size of the deleted files
+     */
+    default void bytesDeleted(FileSet fileSet, long bytes) {}
+
+    /**
+     * A file has been copied.
+     *
+     * @param fileSet the file-set the copy works on
+     * @param bytes the size of the copied file
+     */
+    default void bytesCopied(FileSet fileSet, long bytes) {}
+
+    /**
+     * An operation on a single path failed.
+     *
+     * @param fileSet the file-set the operation works on
+     * @param path the path which could not be processed
+     * @param message the failure description
+     */
+    default void failed(FileSet fileSet, String path, String message) {}
+}
@@ -20,23 +20,45 @@ package org.apache.maven.shared.model.fileset.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.time.Instant;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.maven.shared.model.fileset.FileSet;
 import org.apache.maven.shared.model.fileset.mappers.FileNameMapper;
 import org.apache.maven.shared.model.fileset.mappers.MapperException;
 import org.apache.maven.shared.model.fileset.mappers.MapperUtil;
-import org.codehaus.plexus.util.DirectoryScanner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,15 +68,41 @@ import static java.util.Objects.requireNonNull;
  * Provides operations for use with FileSet instances, such as retrieving the included/excluded files, deleting all
  * matching entries, etc.
  *
+ * <p>Instances are thread-safe and may be shared, e.g. between the modules of a parallel build. Concurrent requests for
+ * the included files or directories of equal file-sets share a single scan: a request arriving while an equal scan is
+ * running waits for its result instead of walking the directory again.</p>
+ *
  * @author jdcasey
  */
 public class FileSetManager {
     private static final String[] EMPTY_STRING_ARRAY = new String[0];
 
+    private static final String SYNC_DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * The number of entries found by a streaming deletion which wait for a worker before the scan blocks.
+     */
+    private static final int DELETE_QUEUE_CAPACITY = 1024;
+
     private final boolean verbose;
 
     private final Logger logger;
 
+    private final FileHasher fileHasher = new FileHasher();
+
+    private volatile FileSetListener listener;
+
+    private volatile IoScheduler ioScheduler = new IoScheduler(new IoOptions());
+
+    /**
+     * The scheduler of {@link #delete(FileSet, boolean)}, which deletes on the calling thread until I/O options are
+     * set, as it always did.
+     */
+    private volatile IoScheduler deleteScheduler = new IoScheduler(sequentialIoOptions());
+
+    private final ConcurrentMap<List<Object>, CompletableFuture<IncludedPaths>> runningScans =
+            new ConcurrentHashMap<>();
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
@@ -90,6 +138,30 @@ public class FileSetManager {
     // Public methods
     // ----------------------------------------------------------------------
 
+    /**
+     * Register a listener receiving timings, counters and failures of the operations of this manager. Without a
+     * listener, none of these values are collected.
+     *
+     * @param listener the listener, or <code>null</code> to remove the current one
+     */
+    public void setListener(FileSetListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Set the limits of the file operations of this manager, i.e. copying, hashing and deleting files, and of its
+     * parallel scans. By default, as many files are processed at the same time on each file store as there are
+     * processors, without rate limits, except by {@link #delete(FileSet, boolean)} which deletes on the calling thread
+     * until I/O options are set.
+     *
+     * @param ioOptions the limits, copied
+     */
+    public void setIoOptions(IoOptions ioOptions) {
+        IoScheduler scheduler = new IoScheduler(ioOptions);
+        this.ioScheduler = scheduler;
+        this.deleteScheduler = scheduler;
+    }
+
     /**
      * @param fileSet {@link FileSet}
      * @return the included files as map
@@ -100,6 +172,10 @@ public class FileSetManager {
         String[] sourcePaths = getIncludedFiles(fileSet);
         Map<String, String> mappedPaths = new LinkedHashMap<>();
 
+        FileSetListener listener = this.listener;
+        long start = listener != null ? System.nanoTime() : 0;
+        Object event = FileSetEvents.beginMapping();
+
         FileNameMapper fileMapper = MapperUtil.getFileNameMapper(fileSet.getMapper());
 
         for (String sourcePath : sourcePaths) {
@@ -113,9 +189,25 @@ public class FileSetManager {
             mappedPaths.put(sourcePath, destPath);
         }
 
+        FileSetEvents.endMapping(event, fileSet, basedir(fileSet), sourcePaths.length);
+        if (listener != null) {
+            listener.phaseFinished(fileSet, FileSetListener.Phase.MAP, System.nanoTime() - start);
+        }
+
         return mappedPaths;
     }
 
+    /**
+     * Get a matcher telling whether paths are included by the patterns of this fileset, without scanning its base
+     * directory.
+     *
+     * @param fileSet the fileset defining rules for inclusion/exclusion
+     * @return the matcher, which can be reused for any number of paths
+     */
+    public FileSetMatcher matcher(FileSet fileSet) {
+        return new FileSetMatcher(FileSetPatterns.of(fileSet));
+    }
+
     /**
      * Get all the filenames which have been included by the rules in this fileset.
      *
@@ -123,7 +215,77 @@ public class FileSetManager {
      * @return the array of matching filenames, relative to the basedir of the file-set.
      */
     public String[] getIncludedFiles(FileSet fileSet) {
-        DirectoryScanner scanner = scan(fileSet);
+        return scanIncluded(basedir(fileSet), fileSet).files.clone();
+    }
+
+    /**
+     * Get all the directory names which have been included by the rules in this fileset.
+     *
+     * @param fileSet The fileset defining rules for inclusion/exclusion, and base directory.
+     * @return the array of matching dirnames, relative to the basedir of the file-set.
+     */
+    public String[] getIncludedDirectories(FileSet fileSet) {
+        return scanIncluded(basedir(fileSet), fileSet).directories.clone();
+    }
+
+    /**
+     * Get all the filenames below the given base directory which have been included by the rules in this fileset. The
+     * base directory may be located on any file system, e.g. inside a ZIP file opened as file system, and replaces the
+     * directory of the file-set.
+     *
+     * @param basedir the base directory
+     * @param fileSet the fileset defining rules for inclusion/exclusion
+     * @return the array of matching filenames, relative to the base directory
+     */
+    public String[] getIncludedFiles(Path basedir, FileSet fileSet) {
+        return scanIncluded(basedir, fileSet).files.clone();
+    }
+
+    /**
+     * Get all the directory names below the given base directory which have been included by the rules in this
+     * fileset.
+     *
+     * @param basedir the base directory, on any file system
+     * @param fileSet the fileset defining rules for inclusion/exclusion
+     * @return the array of matching dirnames, relative to the base directory
+     * @see #getIncludedFiles(Path, FileSet)
+     */
+    public String[] getIncludedDirectories(Path basedir, FileSet fileSet) {
+        return scanIncluded(basedir, fileSet).directories.clone();
+    }
+
+    /**
+     * Get all the filenames which have been included by the rules in this fileset, stored compactly. Unlike
+     * {@link #getIncludedFiles(FileSet)}, the scan does not hold the filenames as strings, which makes a difference for
+     * file-sets of millions of files.
+     *
+     * @param fileSet the fileset defining rules for inclusion/exclusion, and base directory
+     * @return the list of matching filenames, relative to the basedir of the file-set
+     */
+    public PathList getIncludedFileList(FileSet fileSet) {
+        return getIncludedList(fileSet, false);
+    }
+
+    /**
+     * Get all the directory names which have been included by the rules in this fileset, stored compactly.
+     *
+     * @param fileSet the fileset defining rules for inclusion/exclusion, and base directory
+     * @return the list of matching dirnames, relative to the basedir of the file-set
+     * @see #getIncludedFileList(FileSet)
+     */
+    public PathList getIncludedDirectoryList(FileSet fileSet) {
+        return getIncludedList(fileSet, true);
+    }
+
+    /**
+     * Get the filenames which have been included by the rules in this fileset, within the limits of the given options.
+     *
+     * @param fileSet the fileset defining rules for inclusion/exclusion, and base directory
+     * @param options the limits of the scan
+     * @return the array of matching filenames, relative to the basedir of the file-set
+     */
+    public String[] getIncludedFiles(FileSet fileSet, ScanOptions options) {
+        FileSetScanner scanner = scan(fileSet, options);
 
         if (scanner != null) {
             return scanner.getIncludedFiles();
@@ -133,13 +295,15 @@ public class FileSetManager {
     }
 
     /**
-     * Get all the directory names which have been included by the rules in this fileset.
+     * Get the directory names which have been included by the rules in this fileset, within the limits of the given
+     * options.
      *
-     * @param fileSet The fileset defining rules for inclusion/exclusion, and base directory.
-     * @return the array of matching dirnames, relative to the basedir of the file-set.
+     * @param fileSet the fileset defining rules for inclusion/exclusion, and base directory
+     * @param options the limits of the scan
+     * @return the array of matching dirnames, relative to the basedir of the file-set
      */
-    public String[] getIncludedDirectories(FileSet fileSet) {
-        DirectoryScanner scanner = scan(fileSet);
+    public String[] getIncludedDirectories(FileSet fileSet, ScanOptions options) {
+        FileSetScanner scanner = scan(fileSet, options);
 
         if (scanner != null) {
             return scanner.getIncludedDirectories();
@@ -148,6 +312,46 @@ public class FileSetManager {
         return EMPTY_STRING_ARRAY;
     }
 
+    /**
+     * Check whether the rules in this fileset include any file or directory below the base directory. The scan stops
+     * at the first included entry.
+     *
+     * @param fileSet the fileset defining rules for inclusion/exclusion, and base directory
+     * @return <code>true</code> if anything is included
+     */
+    public boolean anyIncluded(FileSet fileSet) {
+        return firstIncluded(fileSet) != null;
+    }
+
+    /**
+     * Get the first file or directory below the base directory found to be included by the rules in this fileset. The
+     * scan stops at the first included entry.
+     *
+     * @param fileSet the fileset defining rules for inclusion/exclusion, and base directory
+     * @return the path of the first included entry, relative to the basedir of the file-set, or <code>null</code> if
+     *         nothing is included
+     */
+    public String firstIncluded(FileSet fileSet) {
+        ScanOptions options = new ScanOptions();
+        options.setMaxResults(1);
+        FileSetScanner scanner = scan(fileSet, options);
+
+        if (scanner == null) {
+            return null;
+        }
+
+        String[] files = scanner.getIncludedFiles();
+        if (files.length > 0) {
+            return files[0];
+        }
+        for (String directory : scanner.getIncludedDirectories()) {
+            if (!directory.isEmpty()) {
+                return directory;
+            }
+        }
+        return null;
+    }
+
     /**
      * Get all the filenames which have been excluded by the rules in this fileset.
      *
@@ -155,7 +359,19 @@ public class FileSetManager {
      * @return the array of non-matching filenames, relative to the basedir of the file-set.
      */
     public String[] getExcludedFiles(FileSet fileSet) {
-        DirectoryScanner scanner = scan(fileSet);
+        return getExcludedFiles(basedir(fileSet), fileSet);
+    }
+
+    /**
+     * Get all the filenames below the given base directory which have been excluded by the rules in this fileset.
+     *
+     * @param basedir the base directory, on any file system
+     * @param fileSet the fileset defining rules for inclusion/exclusion
+     * @return the array of non-matching filenames, relative to the base directory
+     * @see #getIncludedFiles(Path, FileSet)
+     */
+    public String[] getExcludedFiles(Path basedir, FileSet fileSet) {
+        FileSetScanner scanner = scan(basedir, fileSet, null);
 
         if (scanner != null) {
             return scanner.getExcludedFiles();
@@ -171,7 +387,20 @@ public class FileSetManager {
      * @return the array of non-matching dirnames, relative to the basedir of the file-set.
      */
     public String[] getExcludedDirectories(FileSet fileSet) {
-        DirectoryScanner scanner = scan(fileSet);
+        return getExcludedDirectories(basedir(fileSet), fileSet);
+    }
+
+    /**
+     * Get all the directory names below the given base directory which have been excluded by the rules in this
+     * fileset.
+     *
+     * @param basedir the base directory, on any file system
+     * @param fileSet the fileset defining rules for inclusion/exclusion
+     * @return the array of non-matching dirnames, relative to the base directory
+     * @see #getIncludedFiles(Path, FileSet)
+     */
+    public String[] getExcludedDirectories(Path basedir, FileSet fileSet) {
+        FileSetScanner scanner = scan(basedir, fileSet, null);
 
         if (scanner != null) {
             return scanner.getExcludedDirectories();
@@ -181,7 +410,8 @@ public class FileSetManager {
     }
 
     /**
-     * Delete the matching files and directories for the given file-set definition.
+     * Delete the matching files and directories for the given file-set definition. The files are deleted by the
+     * calling thread, unless I/O options have been set by {@link #setIoOptions(IoOptions)}.
      *
      * @param fileSet The file-set matching rules, along with search base directory
      * @throws IOException If a matching file cannot be deleted
@@ -191,7 +421,9 @@ public class FileSetManager {
     }
 
     /**
-     * Delete the matching files and directories for the given file-set definition.
+     * Delete the matching files and directories for the given file-set definition. The files are deleted by the
+     * calling thread, unless I/O options have been set by {@link #setIoOptions(IoOptions)}, in which case they are
+     * deleted in parallel within their limits and the order of the warning messages is not defined.
      *
      * @param fileSet the file-set matching rules, along with search base directory
      * @param throwsError throw IOException when errors have occurred by deleting files or directories
@@ -199,177 +431,1140 @@ public class FileSetManager {
      *             warning messages
      */
     public void delete(FileSet fileSet, boolean throwsError) throws IOException {
-        Set<String> deletablePaths = findDeletablePaths(fileSet);
+        delete(basedir(fileSet), fileSet, throwsError);
+    }
+
+    /**
+     * Delete the matching files and directories below the given base directory, which may be located on any file
+     * system and replaces the directory of the file-set. The attributes of each entry are read once for all the scans
+     * and the deletion.
+     *
+     * @param basedir the base directory
+     * @param fileSet the file-set matching rules
+     * @param throwsError throw IOException when errors have occurred by deleting files or directories
+     * @throws IOException if a matching file cannot be deleted and <code>throwsError=true</code>, otherwise print
+     *             warning messages
+     * @see #delete(FileSet, boolean)
+     */
+    public void delete(Path basedir, FileSet fileSet, boolean throwsError) throws IOException {
+        delete(basedir, fileSet, throwsError, deleteScheduler);
+    }
+
+    private void delete(Path basedir, FileSet fileSet, boolean throwsError, IoScheduler scheduler) throws IOException {
+        FileAttributeCache attributes = new FileAttributeCache(basedir);
+        Set<String> deletablePaths = findDeletablePaths(fileSet, attributes);
 
         if (logger.isDebugEnabled()) {
             String paths = String.valueOf(deletablePaths).replace(',', '\n');
             logger.debug("Found deletable paths: " + paths);
         }
 
-        List<String> warnMessages = new LinkedList<>();
+        FileSetListener listener = this.listener;
+        long start = listener != null ? System.nanoTime() : 0;
+        Object event = FileSetEvents.beginDelete();
 
-        for (String path : deletablePaths) {
-            File file = new File(fileSet.getDirectory(), path);
+        deletePaths(fileSet, attributes, deletablePaths, fileSet.isFollowSymlinks(), throwsError, scheduler);
 
-            if (file.exists()) {
-                if (file.isDirectory()) {
-                    if (fileSet.isFollowSymlinks() || !Files.isSymbolicLink(file.toPath())) {
-                        if (verbose) {
-                            logger.info("Deleting directory: " + file);
-                        }
+        FileSetEvents.endDelete(event, basedir, deletablePaths.size());
+        if (listener != null) {
+            listener.phaseFinished(fileSet, FileSetListener.Phase.DELETE, System.nanoTime() - start);
+        }
+    }
 
-                        removeDir(file, fileSet.isFollowSymlinks(), throwsError, warnMessages);
-                    } else { // delete a symlink to a directory without follow
-                        if (verbose) {
-                            logger.info("Deleting symlink to directory: " + file);
-                        }
+    /**
+     * Delete the matching files and directories for the given file-set definition while scanning for them. Unlike
+     * {@link #delete(FileSet, boolean)}, the deletable paths are not collected first: workers delete the entries as
+     * soon as the scan finds them, and the scan blocks while the bounded queue of pending deletions is full, which
+     * holds {@value #DELETE_QUEUE_CAPACITY} entries. The memory used is bounded by this capacity and the depth of the
+     * tree, independent of the number of entries. Directories are deleted once everything below them has been
+     * deleted.
+     *
+     * <p>Symbolic links are deleted as links, without deleting anything below their target. File-sets following
+     * symbolic links are deleted by {@link #delete(FileSet, boolean)}, as cycles have to be detected.</p>
+     *
+     * @param fileSet the file-set matching rules, along with search base directory
+     * @param throwsError throw IOException when errors have occurred by deleting files or directories
+     * @throws IOException if a matching file cannot be deleted and <code>throwsError=true</code>, otherwise print
+     *             warning messages
+     */
+    public void deleteStreaming(FileSet fileSet, boolean throwsError) throws IOException {
+        if (fileSet.isFollowSymlinks()) {
+            delete(basedir(fileSet), fileSet, throwsError, ioScheduler);
+            return;
+        }
 
-                        if (!file.delete()) {
-                            String message = "Unable to delete symlink " + file.getAbsolutePath();
-                            if (throwsError) {
-                                throw new IOException(message);
-                            }
+        File basedir = new File(fileSet.getDirectory());
+        if (!basedir.isDirectory()) {
+            return;
+        }
 
-                            if (!warnMessages.contains(message)) {
-                                warnMessages.add(message);
-                            }
-                        }
-                    }
-                } else {
-                    if (verbose) {
-                        logger.info("Deleting file: " + file);
+        FileSetListener listener = this.listener;
+        long start = listener != null ? System.nanoTime() : 0;
+        Object event = FileSetEvents.beginDelete();
+
+        List<String> warnMessages = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger deleted = new AtomicInteger();
+        // not retained, as memory must not grow with the number of entries
+        FileAttributeCache attributes = new FileAttributeCache(basedir.toPath(), false);
+        IoScheduler.Pipeline<Deletion> pipeline =
+                ioScheduler.pipeline(basedir.toPath(), DELETE_QUEUE_CAPACITY, deletion -> {
+                    long bytes = deletion instanceof PendingDirectory
+                            ? removeStreamed(
+                                    fileSet, attributes, (PendingDirectory) deletion, throwsError, warnMessages)
+                            : deleteStreamed(fileSet, attributes.resolve(deletion.name), throwsError, warnMessages);
+                    deleted.incrementAndGet();
+                    deletionDone(fileSet, attributes, deletion.parent, throwsError, warnMessages);
+                    return bytes;
+                });
+
+        try {
+            newScanner(fileSet, basedir.toPath()).scanDeletable(new FileSetScanner.DeletionHandler<PendingDirectory>() {
+                @Override
+                public PendingDirectory directoryEntered(String name, PendingDirectory parent) {
+                    if (parent != null) {
+                        parent.pending.incrementAndGet();
                     }
+                    return new PendingDirectory(name, parent);
+                }
 
-                    if (!FileUtils.deleteQuietly(file)) {
-                        String message = "Failed to delete file " + file.getAbsolutePath() + ". Reason is unknown.";
-                        if (throwsError) {
-                            throw new IOException(message);
-                        }
+                @Override
+                public void deletable(String name, PendingDirectory parent) throws IOException {
+                    parent.pending.incrementAndGet();
+                    pipeline.submit(new Deletion(name, parent));
+                }
 
-                        warnMessages.add(message);
+                @Override
+                public void directoryLeft(PendingDirectory directory, boolean deletable) throws IOException {
+                    directory.deletable = deletable;
+                    if (directory.pending.decrementAndGet() == 0) {
+                        if (deletable) {
+                            pipeline.submit(directory);
+                        } else {
+                            deletionDone(fileSet, attributes, directory.parent, throwsError, warnMessages);
+                        }
                     }
                 }
-            }
+            });
+        } catch (IOException | RuntimeException | Error e) {
+            pipeline.cancel();
+            throw e;
         }
+        pipeline.finish();
 
         if (logger.isWarnEnabled() && !throwsError && (warnMessages.size() > 0)) {
             for (String warnMessage : warnMessages) {
                 logger.warn(warnMessage);
             }
         }
+
+        FileSetEvents.endDelete(event, basedir.toPath(), deleted.get());
+        if (listener != null) {
+            listener.phaseFinished(fileSet, FileSetListener.Phase.DELETE, System.nanoTime() - start);
+        }
     }
 
-    // ----------------------------------------------------------------------
-    // Private methods
-    // ----------------------------------------------------------------------
+    /**
+     * Compute a content fingerprint of the files included by the given file-set. The included files are hashed in
+     * parallel within the limits of the I/O options, and their digests are combined in sorted relative path order into
+     * a tree digest. The files are hashed with the attributes read while scanning. Digests of files whose size,
+     * modification time and file key did not change since a previous call on this manager are reused without
+     * re-reading the file.
+     *
+     * @param fileSet the file-set matching rules, along with search base directory
+     * @param algorithm the name of the digest algorithm, e.g. <code>SHA-256</code>
+     * @return the fingerprint of the included files
+     * @throws IOException if an included file cannot be read
+     * @throws IllegalArgumentException if the digest algorithm is not supported
+     */
+    public FileSetFingerprint fingerprint(FileSet fileSet, String algorithm) throws IOException {
+        FileHasher.checkAlgorithm(algorithm);
+
+        IoScheduler ioScheduler = this.ioScheduler;
+        Path basedir = basedir(fileSet);
+        List<Map.Entry<String, BasicFileAttributes>> includedFiles = new ArrayList<>();
+        for (Map.Entry<String, BasicFileAttributes> entry :
+                scanAttributes(fileSet, ioScheduler.scanPool(basedir)).entrySet()) {
+            if (!entry.getValue().isDirectory()) {
+                includedFiles.add(entry);
+            }
+        }
+        Map<String, byte[]> fileDigests = new ConcurrentHashMap<>();
 
-    private Set<String> findDeletablePaths(FileSet fileSet) {
-        Set<String> includes = findDeletableDirectories(fileSet);
-        includes.addAll(findDeletableFiles(fileSet, includes));
+        FileSetListener listener = this.listener;
+        long start = listener != null ? System.nanoTime() : 0;
 
-        return includes;
+        ioScheduler.run(basedir, includedFiles, entry -> {
+            String path = entry.getKey();
+            BasicFileAttributes attrs = entry.getValue();
+            fileDigests.put(
+                    path.replace(File.separatorChar, '/'), fileHasher.digest(basedir.resolve(path), attrs, algorithm));
+            return attrs.size();
+        });
+
+        if (listener != null) {
+            listener.phaseFinished(fileSet, FileSetListener.Phase.HASH, System.nanoTime() - start);
+        }
+
+        return new FileSetFingerprint(algorithm, fileDigests);
     }
 
-    private Set<String> findDeletableDirectories(FileSet fileSet) {
-        if (verbose) {
-            logger.info("Scanning for deletable directories.");
+    /**
+     * Compute the disk usage of the entries included by the given file-set.
+     *
+     * @param fileSet the file-set matching rules, along with search base directory
+     * @return the disk usage of the included entries
+     * @throws IOException if the file store of the base directory cannot be determined
+     * @see #stats(FileSet, boolean)
+     */
+    public FileSetStats stats(FileSet fileSet) throws IOException {
+        return stats(fileSet, false);
+    }
+
+    /**
+     * Compute the disk usage of the entries included by the given file-set, e.g. to report how much space
+     * {@link #delete(FileSet)} would free. The usage is aggregated from the attributes read while scanning, without
+     * reading them again, and the directories are scanned in parallel within the limits of the I/O options.
+     *
+     * @param fileSet the file-set matching rules, along with search base directory
+     * @param byTopLevelDirectory whether to break the usage down per top-level directory of the base directory, the
+     *            included base directory and files directly in it being accounted under the empty name
+     * @return the disk usage of the included entries
+     * @throws IOException if the file store of the base directory cannot be determined
+     */
+    public FileSetStats stats(FileSet fileSet, boolean byTopLevelDirectory) throws IOException {
+        File basedir = new File(fileSet.getDirectory());
+        if (!basedir.isDirectory()) {
+            return new FileSetStats(0, 0, 0, 0, Collections.emptyMap());
         }
 
-        DirectoryScanner scanner = scan(fileSet);
+        long blockSize = FileStores.getBlockSize(Files.getFileStore(basedir.toPath()));
+        Usage total = new Usage();
+        Map<String, Usage> topLevelUsages = new ConcurrentHashMap<>();
+
+        FileSetScanner scanner = newScanner(fileSet, basedir.toPath());
+        scanner.setPool(ioScheduler.scanPool(basedir.toPath()));
+        boolean followSymlinks = fileSet.isFollowSymlinks();
+        scanner.setHandler((name, attributes, linkAttributes) -> {
+            boolean isDirectory = attributes.isDirectory();
+            long size = followSymlinks ? attributes.size() : linkAttributes.size();
+            total.add(isDirectory, size, blockSize);
+
+            if (byTopLevelDirectory) {
+                // the base directory and the files directly in it are accounted under the empty name
+                int separator = name.indexOf(File.separatorChar);
+                String topLevelDirectory = separator >= 0 ? name.substring(0, separator) : isDirectory ? name : "";
+                topLevelUsages
+                        .computeIfAbsent(topLevelDirectory, k -> new Usage())
+                        .add(isDirectory, size, blockSize);
+            }
+        });
+        scanner.scan();
 
-        if (scanner == null) {
-            return Collections.emptySet();
+        Map<String, FileSetStats> topLevelStats = new TreeMap<>();
+        for (Map.Entry<String, Usage> entry : topLevelUsages.entrySet()) {
+            topLevelStats.put(entry.getKey(), entry.getValue().toStats(Collections.emptyMap()));
         }
+        return total.toStats(topLevelStats);
+    }
 
-        Set<String> includes = new HashSet<>(Arrays.asList(scanner.getIncludedDirectories()));
-        List<String> excludes = new ArrayList<>(Arrays.asList(scanner.getExcludedDirectories()));
-        List<String> linksForDeletion = new ArrayList<>();
+    /**
+     * Copy the included files of the given file-set to their mapped destinations below its output directory.
+     *
+     * @param fileSet the file-set matching rules, along with search base directory and output directory
+     * @return the copied files as map of source paths to destination paths
+     * @throws IOException if a file cannot be copied
+     * @throws MapperException if the mapper of the file-set cannot be created
+     * @see #copy(FileSet, CopyMode)
+     */
+    public Map<String, String> copy(FileSet fileSet) throws IOException, MapperException {
+        return copy(fileSet, CopyMode.COPY);
+    }
 
-        if (!fileSet.isFollowSymlinks()) {
-            if (verbose) {
-                logger.info("Adding symbolic link dirs which were previously excluded" + " to the list being deleted.");
-            }
+    /**
+     * Materialize the included files of the given file-set at their mapped destinations below its output directory,
+     * either as copies or as links to the source files. Existing destination files are replaced. Whether hard links
+     * are possible is decided once by comparing the file stores of the base and output directory; files which still
+     * cannot be linked are copied instead. Included files which are symbolic links are followed if the file-set
+     * follows symbolic links, otherwise the link itself is reproduced at the destination.
+     *
+     * @param fileSet the file-set matching rules, along with search base directory and output directory
+     * @param mode how to materialize the files
+     * @return the materialized files as map of source paths to destination paths
+     * @throws IOException if a file cannot be copied or linked
+     * @throws MapperException if the mapper of the file-set cannot be created
+     */
+    public Map<String, String> copy(FileSet fileSet, CopyMode mode) throws IOException, MapperException {
+        if (fileSet.getOutputDirectory() == null) {
+            throw new IllegalArgumentException("The file-set has no output directory to copy to");
+        }
 
-            // we need to see which entries were only excluded because they're symlinks...
-            scanner.setFollowSymlinks(true);
-            scanner.scan();
+        File basedir = new File(fileSet.getDirectory());
+        Path outputDirectory = new File(fileSet.getOutputDirectory()).toPath();
 
-            if (logger.isDebugEnabled()) {
-                logger.debug("Originally marked for delete: " + includes);
-                logger.debug("Marked for preserve (with followSymlinks == false): " + excludes);
+        Map<String, String> mappedPaths = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : mapIncludedFiles(fileSet).entrySet()) {
+            if (entry.getValue() != null) {
+                mappedPaths.put(entry.getKey(), entry.getValue());
             }
+        }
 
-            List<String> includedDirsAndSymlinks = Arrays.asList(scanner.getIncludedDirectories());
+        Files.createDirectories(outputDirectory);
 
-            linksForDeletion.addAll(excludes);
-            linksForDeletion.retainAll(includedDirsAndSymlinks);
+        CopyMode effectiveMode = mode;
+        if (mode == CopyMode.HARD_LINK
+                && !Files.getFileStore(basedir.toPath()).equals(Files.getFileStore(outputDirectory))) {
+            if (verbose) {
+                logger.info("Copying instead of hard linking, " + outputDirectory + " is on another file store than "
+                        + basedir);
+            }
+            effectiveMode = CopyMode.COPY;
+        }
 
-            if (logger.isDebugEnabled()) {
-                logger.debug("Symlinks marked for deletion (originally mismarked): " + linksForDeletion);
+        FileSetListener listener = this.listener;
+        long start = listener != null ? System.nanoTime() : 0;
+
+        CopyMode copyMode = effectiveMode;
+        boolean followSymlinks = fileSet.isFollowSymlinks();
+        ioScheduler.run(outputDirectory, mappedPaths.entrySet(), entry -> {
+            Path source = new File(basedir, entry.getKey()).toPath();
+            Path target = outputDirectory.resolve(entry.getValue());
+            try {
+                return materialize(fileSet, source, target, copyMode, followSymlinks);
+            } catch (IOException e) {
+                if (listener != null) {
+                    listener.failed(fileSet, entry.getKey(), e.getMessage());
+                }
+                throw e;
             }
+        });
 
-            excludes.removeAll(includedDirsAndSymlinks);
+        if (listener != null) {
+            listener.phaseFinished(fileSet, FileSetListener.Phase.COPY, System.nanoTime() - start);
         }
 
-        excludeParentDirectoriesOfExcludedPaths(excludes, includes);
-
-        includes.addAll(linksForDeletion);
+        return mappedPaths;
+    }
 
-        return includes;
+    /**
+     * Synchronize the output directory of the given file-set with its included files, comparing sizes and
+     * modification times.
+     *
+     * @param fileSet the file-set matching rules, along with search base directory and output directory
+     * @return the copied, unchanged and deleted entries
+     * @throws IOException if a file cannot be copied or an orphaned path cannot be deleted
+     * @throws MapperException if the mapper of the file-set cannot be created
+     * @see #sync(FileSet, boolean)
+     */
+    public FileSetSyncResult sync(FileSet fileSet) throws IOException, MapperException {
+        return sync(fileSet, false);
     }
 
-    private Set<String> findDeletableFiles(FileSet fileSet, Set<String> deletableDirectories) {
-        if (verbose) {
-            logger.info("Re-scanning for deletable files.");
+    /**
+     * Synchronize the output directory of the given file-set with its included files. Every included file is mapped
+     * to its destination below the output directory and copied only if the destination is missing or differs in size,
+     * modification time or, if requested, content. Files and directories in the output directory which no included
+     * file maps to are deleted. Comparison and copying run concurrently.
+     *
+     * @param fileSet the file-set matching rules, along with search base directory and output directory
+     * @param compareContent whether to compare the content digests of files having the same size, instead of their
+     *            modification times
+     * @return the copied, unchanged and deleted entries
+     * @throws IOException if a file cannot be copied or an orphaned path cannot be deleted
+     * @throws MapperException if the mapper of the file-set cannot be created
+     */
+    public FileSetSyncResult sync(FileSet fileSet, boolean compareContent) throws IOException, MapperException {
+        if (fileSet.getOutputDirectory() == null) {
+            throw new IllegalArgumentException("The file-set has no output directory to synchronize");
         }
 
-        DirectoryScanner scanner = scan(fileSet);
+        File basedir = new File(fileSet.getDirectory());
+        File outputDirectory = new File(fileSet.getOutputDirectory());
 
-        if (scanner == null) {
-            return deletableDirectories;
+        // destination path -> source path, unmapped sources are skipped
+        Map<String, String> targets = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : mapIncludedFiles(fileSet).entrySet()) {
+            if (entry.getValue() != null) {
+                targets.put(new File(entry.getValue()).getPath(), entry.getKey());
+            }
         }
 
-        deletableDirectories.addAll(Arrays.asList(scanner.getIncludedFiles()));
-        List<String> excludes = new ArrayList<>(Arrays.asList(scanner.getExcludedFiles()));
-        List<String> linksForDeletion = new ArrayList<>();
-
-        if (!fileSet.isFollowSymlinks()) {
-            if (verbose) {
-                logger.info(
-                        "Adding symbolic link files which were previously excluded " + "to the list being deleted.");
+        List<String> orphans = findOrphanedPaths(outputDirectory.toPath(), targets.keySet());
+        if (verbose && !orphans.isEmpty()) {
+            logger.info("Deleting " + orphans.size() + " orphaned paths from " + outputDirectory);
+        }
+        deletePaths(fileSet, new FileAttributeCache(outputDirectory.toPath()), orphans, false, true, ioScheduler);
+
+        FileSetListener listener = this.listener;
+        long start = listener != null ? System.nanoTime() : 0;
+
+        List<String> copied = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger unchanged = new AtomicInteger();
+        ioScheduler.run(outputDirectory.toPath(), targets.entrySet(), entry -> {
+            Path source = new File(basedir, entry.getValue()).toPath();
+            Path target = new File(outputDirectory, entry.getKey()).toPath();
+            try {
+                long copiedBytes = syncFile(fileSet, source, target, compareContent);
+                if (copiedBytes >= 0) {
+                    copied.add(entry.getKey());
+                    return copiedBytes;
+                }
+                unchanged.incrementAndGet();
+                return 0;
+            } catch (IOException e) {
+                if (listener != null) {
+                    listener.failed(fileSet, entry.getValue(), e.getMessage());
+                }
+                throw e;
             }
+        });
 
-            // we need to see which entries were only excluded because they're symlinks...
-            scanner.setFollowSymlinks(true);
-            scanner.scan();
+        if (listener != null) {
+            listener.phaseFinished(fileSet, FileSetListener.Phase.COPY, System.nanoTime() - start);
+        }
 
-            if (logger.isDebugEnabled()) {
-                logger.debug("Originally marked for delete: " + deletableDirectories);
-                logger.debug("Marked for preserve (with followSymlinks == false): " + excludes);
-            }
+        List<String> copiedFiles = new ArrayList<>(copied);
+        Collections.sort(copiedFiles);
+
+        if (verbose) {
+            logger.info("Synchronized " + outputDirectory + ": " + copiedFiles.size() + " copied, " + unchanged.get()
+                    + " unchanged.");
+        }
 
-            List<String> includedFilesAndSymlinks = Arrays.asList(scanner.getIncludedFiles());
+        return new FileSetSyncResult(copiedFiles, unchanged.get(), orphans);
+    }
 
-            linksForDeletion.addAll(excludes);
-            linksForDeletion.retainAll(includedFilesAndSymlinks);
+    /**
+     * Compare the entries included by two file-sets, e.g. to verify that two builds produced the same output. Both
+     * file-sets are scanned for their included entries and attributes, at the same time unless the I/O options limit
+     * the file store of the second to one file at a time, and the entries are merged in sorted order. Files of
+     * different sizes are changed, and files of the same size and modification time are unchanged. Only the remaining
+     * files are compared by content, in parallel within the limits of the I/O options.
+     *
+     * @param left the first file-set
+     * @param right the second file-set
+     * @param options the options of the comparison
+     * @return the entries included by one file-set only, and the changed entries
+     * @throws IOException if the content of a file cannot be read
+     * @throws IllegalArgumentException if the digest algorithm is not supported
+     */
+    public FileSetDiff diff(FileSet left, FileSet right, DiffOptions options) throws IOException {
+        if (options.isCompareContent()) {
+            FileHasher.checkAlgorithm(options.getAlgorithm());
+        }
 
-            if (logger.isDebugEnabled()) {
-                logger.debug("Symlinks marked for deletion (originally mismarked): " + linksForDeletion);
+        IoScheduler ioScheduler = this.ioScheduler;
+        ForkJoinPool leftPool = ioScheduler.scanPool(basedir(left));
+        ForkJoinPool rightPool = ioScheduler.scanPool(basedir(right));
+        Map<String, BasicFileAttributes> leftEntries;
+        Map<String, BasicFileAttributes> rightEntries;
+        if (rightPool == null) {
+            leftEntries = scanAttributes(left, leftPool);
+            rightEntries = scanAttributes(right, null);
+        } else {
+            CompletableFuture<Map<String, BasicFileAttributes>> rightScan =
+                    CompletableFuture.supplyAsync(() -> scanAttributes(right, rightPool), rightPool);
+            try {
+                leftEntries = scanAttributes(left, leftPool);
+            } finally {
+                // not abandoned while still running, even if the left scan failed
+                rightScan.handle((entries, failure) -> null).join();
+            }
+            rightEntries = join(rightScan);
+        }
+        String[] leftNames = leftEntries.keySet().toArray(EMPTY_STRING_ARRAY);
+        String[] rightNames = rightEntries.keySet().toArray(EMPTY_STRING_ARRAY);
+        Arrays.sort(leftNames);
+        Arrays.sort(rightNames);
+
+        List<String> onlyLeft = new ArrayList<>();
+        List<String> onlyRight = new ArrayList<>();
+        List<String> changed = Collections.synchronizedList(new ArrayList<>());
+        List<String> ambiguous = new ArrayList<>();
+
+        int l = 0;
+        int r = 0;
+        while (l < leftNames.length || r < rightNames.length) {
+            int order;
+            if (l == leftNames.length) {
+                order = 1;
+            } else if (r == rightNames.length) {
+                order = -1;
+            } else {
+                order = leftNames[l].compareTo(rightNames[r]);
             }
 
-            excludes.removeAll(includedFilesAndSymlinks);
+            if (order < 0) {
+                onlyLeft.add(leftNames[l++]);
+            } else if (order > 0) {
+                onlyRight.add(rightNames[r++]);
+            } else {
+                String name = leftNames[l++];
+                r++;
+                BasicFileAttributes leftAttrs = leftEntries.get(name);
+                BasicFileAttributes rightAttrs = rightEntries.get(name);
+                if (leftAttrs.isDirectory() || rightAttrs.isDirectory()) {
+                    if (leftAttrs.isDirectory() != rightAttrs.isDirectory()) {
+                        changed.add(name);
+                    }
+                } else if (leftAttrs.size() != rightAttrs.size()) {
+                    changed.add(name);
+                } else if (leftAttrs.lastModifiedTime().toMillis()
+                        != rightAttrs.lastModifiedTime().toMillis()) {
+                    if (options.isCompareContent()) {
+                        ambiguous.add(name);
+                    } else {
+                        changed.add(name);
+                    }
+                }
+            }
         }
 
-        excludeParentDirectoriesOfExcludedPaths(excludes, deletableDirectories);
+        if (!ambiguous.isEmpty()) {
+            FileSetListener listener = this.listener;
+            long start = listener != null ? System.nanoTime() : 0;
+
+            Path leftBasedir = basedir(left);
+            Path rightBasedir = basedir(right);
+            ioScheduler.run(leftBasedir, ambiguous, name -> {
+                BasicFileAttributes leftAttrs = leftEntries.get(name);
+                BasicFileAttributes rightAttrs = rightEntries.get(name);
+                byte[] leftDigest = digest(left, leftBasedir, name, leftAttrs, options.getAlgorithm());
+                byte[] rightDigest = digest(right, rightBasedir, name, rightAttrs, options.getAlgorithm());
+                if (!Arrays.equals(leftDigest, rightDigest)) {
+                    changed.add(name);
+                }
+                return leftAttrs.size() + rightAttrs.size();
+            });
 
-        deletableDirectories.addAll(linksForDeletion);
+            if (listener != null) {
+                listener.phaseFinished(left, FileSetListener.Phase.HASH, System.nanoTime() - start);
+            }
+        }
 
-        return deletableDirectories;
+        List<String> changedPaths = new ArrayList<>(changed);
+        Collections.sort(changedPaths);
+
+        return new FileSetDiff(onlyLeft, onlyRight, changedPaths);
     }
 
     /**
-     * Removes all parent directories of the already excluded files/directories from the given set of deletable
-     * directories. I.e. if "subdir/excluded.txt" should not be deleted, "subdir" should be excluded from deletion, too.
+     * Hash a file of a file-set, reporting a failure to the listener against that file-set.
+     */
+    private byte[] digest(FileSet fileSet, Path basedir, String name, BasicFileAttributes attributes, String algorithm)
+            throws IOException {
+        try {
+            return fileHasher.digest(basedir.resolve(name), attributes, algorithm);
+        } catch (IOException e) {
+            FileSetListener listener = this.listener;
+            if (listener != null) {
+                listener.failed(fileSet, name, e.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Apply the file mode and directory mode of the given file-set to its included files and directories, the base
+     * directory itself included if reported by {@link #getIncludedDirectories(FileSet)}. The current permissions are
+     * taken from the attributes read while scanning, and only entries whose permissions differ are changed, in parallel
+     * within the limits of the I/O options. Symbolic links are skipped, as changing their permissions would change the
+     * permissions of their targets. Without a file mode or directory mode, files or directories respectively are left
+     * alone.
+     *
+     * @param fileSet the file-set matching rules, along with search base directory and modes
+     * @return the numbers of changed and unchanged entries
+     * @throws IOException if the permissions of an entry cannot be changed
+     * @throws IllegalArgumentException if a mode is not an octal number
+     * @throws UnsupportedOperationException if the file system of the base directory has no POSIX permissions
+     */
+    public FileSetModeResult applyModes(FileSet fileSet) throws IOException {
+        Set<PosixFilePermission> filePermissions = fileSet.getFileMode() != null
+                ? FileModes.toPermissions(FileModes.parseMode(fileSet.getFileMode(), 0))
+                : null;
+        Set<PosixFilePermission> directoryPermissions = fileSet.getDirectoryMode() != null
+                ? FileModes.toPermissions(FileModes.parseMode(fileSet.getDirectoryMode(), 0))
+                : null;
+
+        Path basedir = basedir(fileSet);
+        if ((filePermissions == null && directoryPermissions == null) || !Files.isDirectory(basedir)) {
+            return new FileSetModeResult(0, 0);
+        }
+        if (Files.getFileAttributeView(basedir, PosixFileAttributeView.class) == null) {
+            throw new UnsupportedOperationException("No POSIX permissions on the file system of " + basedir);
+        }
+
+        // relative path -> permissions to set
+        List<Map.Entry<String, Set<PosixFilePermission>>> changes = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger unchanged = new AtomicInteger();
+
+        IoScheduler ioScheduler = this.ioScheduler;
+        FileSetScanner scanner = newScanner(fileSet, basedir);
+        scanner.setPool(ioScheduler.scanPool(basedir));
+        scanner.setRetainIncluded(false);
+        scanner.setAttributesType(PosixFileAttributes.class);
+        scanner.setHandler((name, attributes, linkAttributes) -> {
+            Set<PosixFilePermission> permissions = attributes.isDirectory() ? directoryPermissions : filePermissions;
+            if (linkAttributes.isSymbolicLink() || permissions == null) {
+                return;
+            }
+            if (((PosixFileAttributes) attributes).permissions().equals(permissions)) {
+                unchanged.incrementAndGet();
+            } else {
+                changes.add(new AbstractMap.SimpleImmutableEntry<>(name, permissions));
+            }
+        });
+        scanner.scan();
+
+        FileSetListener listener = this.listener;
+        long start = listener != null ? System.nanoTime() : 0;
+
+        ioScheduler.run(basedir, changes, change -> {
+            try {
+                Files.setPosixFilePermissions(basedir.resolve(change.getKey()), change.getValue());
+            } catch (IOException e) {
+                if (listener != null) {
+                    listener.failed(fileSet, change.getKey(), e.getMessage());
+                }
+                throw e;
+            }
+            return 0;
+        });
+
+        if (listener != null) {
+            listener.phaseFinished(fileSet, FileSetListener.Phase.PERMISSIONS, System.nanoTime() - start);
+        }
+
+        return new FileSetModeResult(changes.size(), unchanged.get());
+    }
+
+    // ----------------------------------------------------------------------
+    // Private methods
+    // ----------------------------------------------------------------------
+
+    private Set<String> findDeletablePaths(FileSet fileSet, FileAttributeCache attributes) {
+        Set<String> includes = findDeletableDirectories(fileSet, attributes);
+        includes.addAll(findDeletableFiles(fileSet, attributes, includes));
+
+        return includes;
+    }
+
+    private Set<String> findDeletableDirectories(FileSet fileSet, FileAttributeCache attributes) {
+        if (verbose) {
+            logger.info("Scanning for deletable directories.");
+        }
+
+        FileSetScanner scanner = scan(fileSet, attributes);
+
+        if (scanner == null) {
+            return Collections.emptySet();
+        }
+
+        Set<String> includes = new HashSet<>(Arrays.asList(scanner.getIncludedDirectories()));
+        List<String> excludes = new ArrayList<>(Arrays.asList(scanner.getExcludedDirectories()));
+        excludes.addAll(Arrays.asList(scanner.getDeselectedDirectories()));
+        List<String> linksForDeletion = new ArrayList<>();
+
+        if (!fileSet.isFollowSymlinks()) {
+            if (verbose) {
+                logger.info("Adding symbolic link dirs which were previously excluded" + " to the list being deleted.");
+            }
+
+            // we need to see which entries were only excluded because they're symlinks...
+            scanner.setFollowSymlinks(true);
+            scanner.scan();
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Originally marked for delete: " + includes);
+                logger.debug("Marked for preserve (with followSymlinks == false): " + excludes);
+            }
+
+            Set<String> includedDirsAndSymlinks = new HashSet<>(Arrays.asList(scanner.getIncludedDirectories()));
+            Map<String, String> cycles = scanner.getCycles();
+
+            for (String exclude : excludes) {
+                if (includedDirsAndSymlinks.contains(resolveCycles(exclude, cycles))) {
+                    linksForDeletion.add(exclude);
+                }
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Symlinks marked for deletion (originally mismarked): " + linksForDeletion);
+            }
+
+            excludes.removeAll(linksForDeletion);
+        }
+
+        excludeParentDirectoriesOfExcludedPaths(excludes, includes);
+
+        includes.addAll(linksForDeletion);
+
+        return includes;
+    }
+
+    private Set<String> findDeletableFiles(
+            FileSet fileSet, FileAttributeCache attributes, Set<String> deletableDirectories) {
+        if (verbose) {
+            logger.info("Re-scanning for deletable files.");
+        }
+
+        FileSetScanner scanner = scan(fileSet, attributes);
+
+        if (scanner == null) {
+            return deletableDirectories;
+        }
+
+        deletableDirectories.addAll(Arrays.asList(scanner.getIncludedFiles()));
+        List<String> excludes = new ArrayList<>(Arrays.asList(scanner.getExcludedFiles()));
+        excludes.addAll(Arrays.asList(scanner.getDeselectedFiles()));
+        List<String> linksForDeletion = new ArrayList<>();
+
+        if (!fileSet.isFollowSymlinks()) {
+            if (verbose) {
+                logger.info(
+                        "Adding symbolic link files which were previously excluded " + "to the list being deleted.");
+            }
+
+            // we need to see which entries were only excluded because they're symlinks...
+            scanner.setFollowSymlinks(true);
+            scanner.scan();
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Originally marked for delete: " + deletableDirectories);
+                logger.debug("Marked for preserve (with followSymlinks == false): " + excludes);
+            }
+
+            Set<String> includedFilesAndSymlinks = new HashSet<>(Arrays.asList(scanner.getIncludedFiles()));
+            Map<String, String> cycles = scanner.getCycles();
+
+            for (String exclude : excludes) {
+                if (includedFilesAndSymlinks.contains(resolveCycles(exclude, cycles))) {
+                    linksForDeletion.add(exclude);
+                }
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Symlinks marked for deletion (originally mismarked): " + linksForDeletion);
+            }
+
+            excludes.removeAll(linksForDeletion);
+        }
+
+        excludeParentDirectoriesOfExcludedPaths(excludes, deletableDirectories);
+
+        deletableDirectories.addAll(linksForDeletion);
+
+        return deletableDirectories;
+    }
+
+    /**
+     * Map a path below a directory which is the same as one of its ancestors to the path below the ancestor, as the
+     * scan does not list directories in cycles.
+     *
+     * @param path a relative path
+     * @param cycles the directories in cycles mapped to their ancestors
+     * @return the path without cycles
+     */
+    private static String resolveCycles(String path, Map<String, String> cycles) {
+        boolean resolved = cycles.isEmpty();
+        while (!resolved) {
+            resolved = true;
+            for (Map.Entry<String, String> cycle : cycles.entrySet()) {
+                String directory = cycle.getKey() + File.separator;
+                if (path.startsWith(directory)) {
+                    String ancestor = cycle.getValue();
+                    String below = path.substring(directory.length());
+                    path = ancestor.isEmpty() ? below : ancestor + File.separator + below;
+                    resolved = false;
+                    break;
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Materialize a single file at the given target, replacing an existing target file.
+     *
+     * @param fileSet the file-set the file belongs to
+     * @param source the source file
+     * @param target the target file
+     * @param mode how to materialize the file
+     * @param followSymlinks whether a source symbolic link is followed, or reproduced as link
+     * @return the number of bytes copied, 0 if linked
+     * @throws IOException if the file cannot be copied or linked
+     */
+    private long materialize(FileSet fileSet, Path source, Path target, CopyMode mode, boolean followSymlinks)
+            throws IOException {
+        Files.createDirectories(target.getParent());
+
+        if (Files.isSymbolicLink(source)) {
+            if (!followSymlinks) {
+                if (verbose) {
+                    logger.info("Copying symlink: " + source + " to " + target);
+                }
+
+                Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, LinkOption.NOFOLLOW_LINKS);
+                return 0;
+            }
+
+            source = source.toRealPath();
+        }
+
+        if (mode == CopyMode.HARD_LINK) {
+            Files.deleteIfExists(target);
+            try {
+                Files.createLink(target, source);
+                return 0;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                if (verbose) {
+                    logger.info("Unable to hard link " + target + ", copying instead: " + e.getMessage());
+                }
+            }
+        } else if (mode == CopyMode.SYMBOLIC_LINK) {
+            Files.deleteIfExists(target);
+
+            Path absoluteSource = source.toAbsolutePath().normalize();
+            Path linkDirectory = target.toAbsolutePath().normalize().getParent();
+            Path linkTarget;
+            try {
+                linkTarget = linkDirectory.relativize(absoluteSource);
+            } catch (IllegalArgumentException e) {
+                // different roots, no relative path possible
+                linkTarget = absoluteSource;
+            }
+
+            Files.createSymbolicLink(target, linkTarget);
+            return 0;
+        }
+
+        return copyFile(fileSet, source, target);
+    }
+
+    /**
+     * Copy a file to the given target, unless the target is already up to date.
+     *
+     * @param fileSet the file-set the file belongs to
+     * @param source the source file
+     * @param target the target file
+     * @param compareContent whether to compare content digests instead of modification times
+     * @return the number of bytes copied, or -1 if the file was up to date
+     * @throws IOException if the file cannot be copied
+     */
+    private long syncFile(FileSet fileSet, Path source, Path target, boolean compareContent) throws IOException {
+        BasicFileAttributes sourceAttrs = Files.readAttributes(source, BasicFileAttributes.class);
+        BasicFileAttributes targetAttrs = null;
+        try {
+            targetAttrs = Files.readAttributes(target, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // not yet copied
+        }
+
+        if (targetAttrs != null && targetAttrs.isRegularFile() && targetAttrs.size() == sourceAttrs.size()) {
+            long sourceModified = sourceAttrs.lastModifiedTime().toMillis();
+            if (!compareContent) {
+                if (targetAttrs.lastModifiedTime().toMillis() == sourceModified) {
+                    return -1;
+                }
+            } else if (Arrays.equals(
+                    fileHasher.digest(source, sourceAttrs, SYNC_DIGEST_ALGORITHM),
+                    fileHasher.digest(target, targetAttrs, SYNC_DIGEST_ALGORITHM))) {
+                if (targetAttrs.lastModifiedTime().toMillis() != sourceModified) {
+                    Files.setLastModifiedTime(target, sourceAttrs.lastModifiedTime());
+                }
+                return -1;
+            }
+        }
+
+        if (verbose) {
+            logger.info("Copying file: " + source + " to " + target);
+        }
+
+        Files.createDirectories(target.getParent());
+        return copyFile(fileSet, source, target);
+    }
+
+    private long copyFile(FileSet fileSet, Path source, Path target) throws IOException {
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+
+        long size = Files.size(target);
+        FileSetListener listener = this.listener;
+        if (listener != null) {
+            listener.bytesCopied(fileSet, size);
+        }
+        return size;
+    }
+
+    /**
+     * Find the files and directories in the output directory which are not the target of any mapped file. Orphaned
+     * directories are reported as a whole, without their contents.
+     *
+     * @param outputDirectory the output directory
+     * @param targets the relative paths of the mapped target files
+     * @return the relative paths of the orphaned files and directories
+     * @throws IOException if the output directory cannot be walked
+     */
+    private static List<String> findOrphanedPaths(Path outputDirectory, Set<String> targets) throws IOException {
+        List<String> orphans = new ArrayList<>();
+        if (!Files.isDirectory(outputDirectory)) {
+            return orphans;
+        }
+
+        Set<String> targetDirectories = new HashSet<>();
+        for (String target : targets) {
+            String parent = new File(target).getParent();
+            while (parent != null && targetDirectories.add(parent)) {
+                parent = new File(parent).getParent();
+            }
+        }
+
+        Files.walkFileTree(outputDirectory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(outputDirectory)) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                String path = outputDirectory.relativize(dir).toString();
+                if (targetDirectories.contains(path)) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                orphans.add(path);
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String path = outputDirectory.relativize(file).toString();
+                if (!targets.contains(path)) {
+                    orphans.add(path);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return orphans;
+    }
+
+    /**
+     * Delete the given paths below a base directory. Directories are removed recursively, and the topmost paths are
+     * deleted in parallel within the limits of the given scheduler.
+     *
+     * @param fileSet the file-set the deletion works on
+     * @param attributes the attributes of the entries below the base directory the paths are relative to
+     * @param paths the relative paths to delete
+     * @param followSymlinks whether to follow symbolic links to directories, or simply delete the link
+     * @param throwsError throw IOException when errors have occurred by deleting files or directories
+     * @param scheduler the scheduler to delete the paths with
+     * @throws IOException if a path cannot be deleted and <code>throwsError=true</code>
+     */
+    private void deletePaths(
+            FileSet fileSet,
+            FileAttributeCache attributes,
+            Collection<String> paths,
+            boolean followSymlinks,
+            boolean throwsError,
+            IoScheduler scheduler)
+            throws IOException {
+        List<String> warnMessages = Collections.synchronizedList(new ArrayList<>());
+
+        // a directory is deleted with all its contents, so the paths below it need no separate deletion
+        Set<String> pathSet = new HashSet<>(paths);
+        List<String> topmostPaths = new ArrayList<>();
+        for (String path : paths) {
+            String parentPath = new File(path).getParent();
+            while (parentPath != null && !pathSet.contains(parentPath)) {
+                parentPath = new File(parentPath).getParent();
+            }
+            if (parentPath == null) {
+                topmostPaths.add(path);
+            }
+        }
+
+        scheduler.run(attributes.getBasedir(), topmostPaths, path -> {
+            deletePath(fileSet, attributes, path, followSymlinks, throwsError, warnMessages);
+            return 0;
+        });
+
+        if (logger.isWarnEnabled() && !throwsError && (warnMessages.size() > 0)) {
+            for (String warnMessage : warnMessages) {
+                logger.warn(warnMessage);
+            }
+        }
+    }
+
+    private void deletePath(
+            FileSet fileSet,
+            FileAttributeCache attributes,
+            String name,
+            boolean followSymlinks,
+            boolean throwsError,
+            List<String> warnMessages)
+            throws IOException {
+        Path path = attributes.resolve(name);
+        BasicFileAttributes targetAttributes = attributes.getTarget(name);
+        if (targetAttributes != null) {
+            if (targetAttributes.isDirectory()) {
+                if (followSymlinks || !attributes.get(name).isSymbolicLink()) {
+                    if (verbose) {
+                        logger.info("Deleting directory: " + path);
+                    }
+
+                    Map<Object, String> ancestors = followSymlinks ? new HashMap<>() : null;
+                    removeDir(fileSet, attributes, name, ancestors, throwsError, warnMessages);
+                } else { // delete a symlink to a directory without follow
+                    if (verbose) {
+                        logger.info("Deleting symlink to directory: " + path);
+                    }
+
+                    deleteLink(fileSet, path, throwsError, warnMessages);
+                }
+            } else {
+                if (verbose) {
+                    logger.info("Deleting file: " + path);
+                }
+
+                deleteFile(
+                        fileSet,
+                        path,
+                        targetAttributes,
+                        "Failed to delete file " + path.toAbsolutePath() + ". Reason is unknown.",
+                        throwsError,
+                        warnMessages);
+            }
+        }
+    }
+
+    private void deleteFile(
+            FileSet fileSet,
+            Path path,
+            BasicFileAttributes attributes,
+            String failureMessage,
+            boolean throwsError,
+            List<String> warnMessages)
+            throws IOException {
+        // a file deleted concurrently, e.g. through a symbolic link, is not a failure
+        if (delete(path)) {
+            FileSetListener listener = this.listener;
+            if (listener != null) {
+                listener.bytesDeleted(fileSet, attributes.size());
+            }
+        } else if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            deleteFailed(fileSet, path, failureMessage, throwsError, warnMessages);
+        }
+    }
+
+    private void deleteLink(FileSet fileSet, Path link, boolean throwsError, List<String> warnMessages)
+            throws IOException {
+        if (!delete(link) && Files.exists(link, LinkOption.NOFOLLOW_LINKS)) {
+            deleteFailed(fileSet, link, "Unable to delete symlink " + link.toAbsolutePath(), throwsError, warnMessages);
+        }
+    }
+
+    /**
+     * Delete a file, an empty directory or a symbolic link itself.
+     *
+     * @return whether the entry has been deleted
+     */
+    private static boolean delete(Path path) {
+        try {
+            Files.delete(path);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Delete a file or symbolic link found by a streaming deletion. Symbolic links to directories are deleted as links.
+     *
+     * @return the size of the deleted file
+     */
+    private long deleteStreamed(FileSet fileSet, Path path, boolean throwsError, List<String> warnMessages)
+            throws IOException {
+        if (verbose) {
+            logger.info("Deleting file: " + path);
+        }
+
+        long size;
+        try {
+            size = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+                    .size();
+            Files.delete(path);
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            deleteFailed(fileSet, path, "Unable to delete file " + path.toAbsolutePath(), throwsError, warnMessages);
+            return 0;
+        }
+
+        FileSetListener listener = this.listener;
+        if (listener != null) {
+            listener.bytesDeleted(fileSet, size);
+        }
+        return size;
+    }
+
+    /**
+     * Delete a directory found by a streaming deletion, after everything included below it has been deleted. Entries
+     * below it which are not included are deleted along with it.
+     */
+    private long removeStreamed(
+            FileSet fileSet,
+            FileAttributeCache attributes,
+            PendingDirectory directory,
+            boolean throwsError,
+            List<String> warnMessages)
+            throws IOException {
+        if (verbose) {
+            logger.info("Deleting directory: " + attributes.resolve(directory.name));
+        }
+
+        removeDir(fileSet, attributes, directory.name, null, throwsError, warnMessages);
+        return 0;
+    }
+
+    /**
+     * Account for a finished deletion below a directory of a streaming deletion. Directories with nothing left to wait
+     * for are deleted here, as workers must not wait for room in the queue of the pipeline.
+     */
+    private void deletionDone(
+            FileSet fileSet,
+            FileAttributeCache attributes,
+            PendingDirectory directory,
+            boolean throwsError,
+            List<String> warnMessages)
+            throws IOException {
+        while (directory != null && directory.pending.decrementAndGet() == 0) {
+            if (directory.deletable) {
+                removeStreamed(fileSet, attributes, directory, throwsError, warnMessages);
+            }
+            directory = directory.parent;
+        }
+    }
+
+    private void deleteFailed(
+            FileSet fileSet, Path path, String message, boolean throwsError, List<String> warnMessages)
+            throws IOException {
+        FileSetListener listener = this.listener;
+        if (listener != null) {
+            listener.failed(fileSet, path.toString(), message);
+        }
+
+        if (throwsError) {
+            throw new IOException(message);
+        }
+
+        synchronized (warnMessages) {
+            if (!warnMessages.contains(message)) {
+                warnMessages.add(message);
+            }
+        }
+    }
+
+    /**
+     * Removes all parent directories of the already excluded files/directories from the given set of deletable
+     * directories. I.e. if "subdir/excluded.txt" should not be deleted, "subdir" should be excluded from deletion, too.
      *
      * @param excludedPaths The relative paths of the files/directories which are excluded from deletion, must not be
      *            <code>null</code>.
@@ -409,79 +1604,356 @@ public class FileSetManager {
     }
 
     /**
-     * Delete a directory
+     * Delete a directory and everything below it.
      *
-     * @param dir the directory to delete
-     * @param followSymlinks whether to follow symbolic links, or simply delete the link
-     * @param throwsError Throw IOException when errors have occurred by deleting files or directories.
-     * @param warnMessages A list of warning messages used when <code>throwsError=false</code>.
-     * @throws IOException If a matching file cannot be deleted and <code>throwsError=true</code>.
+     * @param fileSet the file-set the deletion works on
+     * @param attributes the attributes of the entries below the base directory
+     * @param name the path of the directory relative to the base directory
+     * @param ancestors the paths of the directories being deleted by their file keys, to detect cycles when following
+     *            symbolic links, or <code>null</code> to not follow symbolic links
+     * @param throwsError throw IOException when errors have occurred by deleting files or directories
+     * @param warnMessages the warning messages used when <code>throwsError=false</code>
+     * @throws IOException if an entry cannot be deleted and <code>throwsError=true</code>
      */
-    private void removeDir(File dir, boolean followSymlinks, boolean throwsError, List<String> warnMessages)
+    private void removeDir(
+            FileSet fileSet,
+            FileAttributeCache attributes,
+            String name,
+            Map<Object, String> ancestors,
+            boolean throwsError,
+            List<String> warnMessages)
             throws IOException {
-        String[] list = dir.list();
-        if (list == null) {
-            list = new String[0];
+        Path dir = attributes.resolve(name);
+        List<String> list = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+            for (Path child : children) {
+                list.add(child.getFileName().toString());
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            // deleting the directory fails below, unless it is empty
+        }
+
+        Object key = ancestors != null ? directoryKey(attributes, name) : null;
+        if (key != null) {
+            ancestors.put(key, name);
         }
 
         for (String s : list) {
-            File f = new File(dir, s);
-            if (f.isDirectory() && (followSymlinks || !Files.isSymbolicLink(f.toPath()))) {
-                removeDir(f, followSymlinks, throwsError, warnMessages);
-            } else {
-                if (!FileUtils.deleteQuietly(f)) {
-                    String message = "Unable to delete file " + f.getAbsolutePath();
-                    if (throwsError) {
-                        throw new IOException(message);
-                    }
+            String childName = name.isEmpty() ? s : name + File.separator + s;
+            Path f = dir.resolve(s);
+            BasicFileAttributes linkAttributes = attributes.get(childName, f, BasicFileAttributes.class);
+            if (linkAttributes == null) {
+                continue;
+            }
+            BasicFileAttributes targetAttributes = linkAttributes.isSymbolicLink()
+                    ? attributes.getTarget(childName, f, BasicFileAttributes.class)
+                    : linkAttributes;
+
+            if (targetAttributes != null
+                    && targetAttributes.isDirectory()
+                    && (ancestors != null || !linkAttributes.isSymbolicLink())) {
+                String ancestor = ancestors != null ? ancestors.get(directoryKey(attributes, childName)) : null;
+                if (ancestor == null) {
+                    removeDir(fileSet, attributes, childName, ancestors, throwsError, warnMessages);
+                    continue;
+                }
 
-                    if (!warnMessages.contains(message)) {
-                        warnMessages.add(message);
-                    }
+                FileSetListener listener = this.listener;
+                if (listener != null) {
+                    listener.cycleDetected(fileSet, childName, ancestor);
                 }
+                deleteLink(fileSet, f, throwsError, warnMessages);
+            } else if (linkAttributes.isSymbolicLink()) {
+                // only the link, as deleting a directory through a link would empty its target
+                deleteLink(fileSet, f, throwsError, warnMessages);
+            } else {
+                deleteFile(
+                        fileSet,
+                        f,
+                        targetAttributes != null ? targetAttributes : linkAttributes,
+                        "Unable to delete file " + f.toAbsolutePath(),
+                        throwsError,
+                        warnMessages);
             }
         }
 
-        if (!FileUtils.deleteQuietly(dir)) {
-            String message = "Unable to delete directory " + dir.getAbsolutePath();
-            if (throwsError) {
-                throw new IOException(message);
-            }
+        if (key != null) {
+            ancestors.remove(key);
+        }
 
-            if (!warnMessages.contains(message)) {
-                warnMessages.add(message);
-            }
+        if (!delete(dir) && Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+            deleteFailed(fileSet, dir, "Unable to delete directory " + dir.toAbsolutePath(), throwsError, warnMessages);
         }
     }
 
-    private DirectoryScanner scan(FileSet fileSet) {
-        File basedir = new File(fileSet.getDirectory());
-        if (!basedir.exists() || !basedir.isDirectory()) {
+    /**
+     * @param attributes the attributes of the entries below the base directory
+     * @param name the path of a directory relative to the base directory
+     * @return the file key of the directory, its real path if the file system has no file keys, or <code>null</code>
+     *         if it cannot be read
+     */
+    private static Object directoryKey(FileAttributeCache attributes, String name) {
+        BasicFileAttributes directoryAttributes = attributes.getTarget(name);
+        if (directoryAttributes == null) {
             return null;
         }
+        if (directoryAttributes.fileKey() != null) {
+            return directoryAttributes.fileKey();
+        }
+        try {
+            return attributes.resolve(name).toRealPath();
+        } catch (IOException e) {
+            return null;
+        }
+    }
 
-        DirectoryScanner scanner = new DirectoryScanner();
+    private static Path basedir(FileSet fileSet) {
+        return new File(fileSet.getDirectory()).toPath();
+    }
 
-        String[] includesArray = fileSet.getIncludesArray();
-        String[] excludesArray = fileSet.getExcludesArray();
+    private FileSetScanner scan(FileSet fileSet) {
+        return scan(basedir(fileSet), fileSet, null);
+    }
 
-        if (includesArray.length > 0) {
-            scanner.setIncludes(includesArray);
+    /**
+     * Scan the base directory of the given attributes, reading the attributes of each entry once for all the scans
+     * sharing them.
+     */
+    private FileSetScanner scan(FileSet fileSet, FileAttributeCache attributes) {
+        BasicFileAttributes basedirAttributes = attributes.getTarget("");
+        if (basedirAttributes == null || !basedirAttributes.isDirectory()) {
+            return null;
         }
 
-        if (excludesArray.length > 0) {
-            scanner.setExcludes(excludesArray);
+        FileSetScanner scanner = newScanner(fileSet, attributes.getBasedir());
+        scanner.setAttributeCache(attributes);
+        scanner.scan();
+
+        return scanner;
+    }
+
+    private FileSetScanner scan(FileSet fileSet, ScanOptions options) {
+        return scan(basedir(fileSet), fileSet, options);
+    }
+
+    private FileSetScanner scan(Path basedir, FileSet fileSet, ScanOptions options) {
+        if (!Files.isDirectory(basedir)) {
+            return null;
         }
 
-        if (fileSet.isUseDefaultExcludes()) {
-            scanner.addDefaultExcludes();
+        FileSetScanner scanner = newScanner(fileSet, basedir);
+        if (options != null) {
+            scanner.setMaxDepth(options.getMaxDepth());
+            scanner.setMaxResults(options.getMaxResults());
         }
 
-        scanner.setBasedir(basedir);
-        scanner.setFollowSymlinks(fileSet.isFollowSymlinks());
+        scanner.scan();
+
+        return scanner;
+    }
 
+    /**
+     * Scan for the included files and directories, or wait for the result of a running scan of an equal file-set.
+     *
+     * @param basedir the base directory to scan
+     * @param fileSet the file-set to scan
+     * @return the included paths, shared between callers and not to be modified
+     */
+    private IncludedPaths scanIncluded(Path basedir, FileSet fileSet) {
+        List<Object> key = scanKey(basedir, fileSet);
+        CompletableFuture<IncludedPaths> scan = new CompletableFuture<>();
+        CompletableFuture<IncludedPaths> running = runningScans.putIfAbsent(key, scan);
+
+        if (running != null) {
+            return join(running);
+        }
+
+        try {
+            FileSetScanner scanner = scan(basedir, fileSet, null);
+            IncludedPaths paths = scanner != null
+                    ? new IncludedPaths(scanner.getIncludedFiles(), scanner.getIncludedDirectories())
+                    : new IncludedPaths(EMPTY_STRING_ARRAY, EMPTY_STRING_ARRAY);
+            scan.complete(paths);
+            return paths;
+        } catch (RuntimeException | Error e) {
+            scan.completeExceptionally(e);
+            throw e;
+        } finally {
+            runningScans.remove(key, scan);
+        }
+    }
+
+    /**
+     * @param basedir the base directory to scan
+     * @param fileSet the file-set
+     * @return a key equal for file-sets yielding the same scan result
+     */
+    private static List<Object> scanKey(Path basedir, FileSet fileSet) {
+        return Arrays.asList(
+                basedir.toAbsolutePath(),
+                new ArrayList<>(fileSet.getIncludes()),
+                new ArrayList<>(fileSet.getExcludes()),
+                fileSet.isUseDefaultExcludes(),
+                fileSet.isFollowSymlinks(),
+                fileSet.isUseGitIgnore(),
+                fileSet.isUseGitIndex(),
+                fileSet.getMinSize(),
+                fileSet.getMaxSize(),
+                fileSet.getModifiedBefore(),
+                fileSet.getModifiedAfter(),
+                fileSet.getType());
+    }
+
+    /**
+     * @return the I/O options processing one file at a time on the calling thread
+     */
+    private static IoOptions sequentialIoOptions() {
+        IoOptions options = new IoOptions();
+        options.setMaxConcurrency(1);
+        return options;
+    }
+
+    /**
+     * Wait for a result, rethrowing the unchecked exception it failed with.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param fileSet the file-set to scan
+     * @param pool the pool to scan the directories in parallel on, or <code>null</code> to scan on the calling thread
+     * @return the included entries below the base directory, with the attributes of their targets
+     */
+    private Map<String, BasicFileAttributes> scanAttributes(FileSet fileSet, ForkJoinPool pool) {
+        Map<String, BasicFileAttributes> entries = new ConcurrentHashMap<>();
+        Path basedir = basedir(fileSet);
+        if (Files.isDirectory(basedir)) {
+            FileSetScanner scanner = newScanner(fileSet, basedir);
+            scanner.setPool(pool);
+            scanner.setRetainIncluded(false);
+            scanner.setHandler((name, attributes, linkAttributes) -> {
+                if (!name.isEmpty()) {
+                    entries.put(name, attributes);
+                }
+            });
+            scanner.scan();
+        }
+        return entries;
+    }
+
+    private PathList getIncludedList(FileSet fileSet, boolean directories) {
+        Path basedir = basedir(fileSet);
+        if (!Files.isDirectory(basedir)) {
+            return PathList.empty();
+        }
+
+        PathList.Builder paths = new PathList.Builder();
+        FileSetScanner scanner = newScanner(fileSet, basedir);
+        scanner.setRetainIncluded(false);
+        scanner.setHandler((name, attributes, linkAttributes) -> {
+            if (attributes.isDirectory() == directories) {
+                paths.add(name);
+            }
+        });
         scanner.scan();
 
+        return paths.build();
+    }
+
+    private FileSetScanner newScanner(FileSet fileSet, Path basedir) {
+        FileSetScanner scanner = new FileSetScanner(basedir);
+        scanner.setPatterns(FileSetPatterns.of(fileSet));
+
+        scanner.setFollowSymlinks(fileSet.isFollowSymlinks());
+        scanner.setUseGitIgnore(fileSet.isUseGitIgnore());
+        scanner.setUseGitIndex(fileSet.isUseGitIndex());
+        scanner.setSelector(AttributeSelector.of(fileSet, Instant.now()));
+        scanner.setListener(fileSet, listener);
+
         return scanner;
     }
+
+    /**
+     * The result of a scan for included paths.
+     */
+    private static final class IncludedPaths {
+        private final String[] files;
+
+        private final String[] directories;
+
+        IncludedPaths(String[] files, String[] directories) {
+            this.files = files;
+            this.directories = directories;
+        }
+    }
+
+    /**
+     * An entry to delete by a streaming deletion.
+     */
+    private static class Deletion {
+        /**
+         * The path relative to the base directory.
+         */
+        final String name;
+
+        final PendingDirectory parent;
+
+        Deletion(String name, PendingDirectory parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * A directory of a streaming deletion, counting the deletions below it which have not finished yet, plus one
+     * until the scan has left it.
+     */
+    private static final class PendingDirectory extends Deletion {
+        final AtomicInteger pending = new AtomicInteger(1);
+
+        volatile boolean deletable;
+
+        PendingDirectory(String name, PendingDirectory parent) {
+            super(name, parent);
+        }
+    }
+
+    /**
+     * Disk usage counters, updated concurrently while scanning.
+     */
+    private static final class Usage {
+        private final LongAdder files = new LongAdder();
+
+        private final LongAdder directories = new LongAdder();
+
+        private final LongAdder bytes = new LongAdder();
+
+        private final LongAdder allocatedBytes = new LongAdder();
+
+        void add(boolean isDirectory, long size, long blockSize) {
+            if (isDirectory) {
+                directories.increment();
+            } else {
+                files.increment();
+                bytes.add(size);
+                allocatedBytes.add((size + blockSize - 1) / blockSize * blockSize);
+            }
+        }
+
+        FileSetStats toStats(Map<String, FileSetStats> topLevelDirectories) {
+            return new FileSetStats(
+                    files.sum(), directories.sum(), bytes.sum(), allocatedBytes.sum(), topLevelDirectories);
+        }
+    }
 }
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.codehaus.plexus.util.MatchPatterns;
+
+/**
+ * Tells whether paths relative to the base directory of a file-set are matched by its include, exclude and default
+ * exclude patterns, the same way as a scan of the base directory, without accessing the file system. This suits
+ * callers which learn about paths by other means, e.g. from file change events.
+ *
+ * <p>The rules needing the file system are not applied: <code>.gitignore</code> files, the Git index, the attribute
+ * selectors of the file-set, and the exclusion of the entries below symbolic links when these are not followed.</p>
+ *
+ * <p>Instances are immutable and thread-safe.</p>
+ *
+ * @see FileSetManager#matcher(org.apache.maven.shared.model.fileset.FileSet)
+ */
+public final class FileSetMatcher {
+    private static final char[][] TOKENIZED_EMPTY = new char[0][];
+
+    private final MatchPatterns includesPatterns;
+
+    private final MatchPatterns excludesPatterns;
+
+    /**
+     * The names of the entries excluded by patterns of the form <code>**&#47;name</code>.
+     */
+    private final Set<String> excludedNames = new HashSet<>();
+
+    /**
+     * The names of the entries excluded along with everything below them, by patterns of the form
+     * <code>**&#47;name&#47;**</code>.
+     */
+    private final Set<String> excludedSubtreeNames = new HashSet<>();
+
+    /**
+     * The patterns matching the entries excluded along with everything below them by the other patterns of the form
+     * <code>pattern&#47;**</code>, or <code>null</code> if there are none.
+     */
+    private final MatchPatterns excludedSubtreePatterns;
+
+    /**
+     * @param patterns the normalized include and exclude patterns to compile
+     */
+    FileSetMatcher(FileSetPatterns patterns) {
+        String[] includes = patterns.getIncludes();
+        String[] excludes = patterns.getExcludes();
+        includesPatterns = MatchPatterns.from(includes != null ? includes : new String[] {"**"});
+
+        String anyParent = "**" + File.separator;
+        String anyChild = File.separator + "**";
+        List<String> remaining = new ArrayList<>();
+        List<String> subtrees = new ArrayList<>();
+        if (excludes != null) {
+            for (String pattern : excludes) {
+                String name = literalName(pattern, anyParent, anyChild);
+                if (name != null) {
+                    excludedSubtreeNames.add(name);
+                    continue;
+                }
+                name = literalName(pattern, anyParent, "");
+                if (name != null) {
+                    excludedNames.add(name);
+                    continue;
+                }
+                if (!pattern.startsWith("%") && pattern.length() > anyChild.length() && pattern.endsWith(anyChild)) {
+                    // everything below an entry matching the parent pattern matches the pattern as well
+                    subtrees.add(pattern.substring(0, pattern.length() - anyChild.length()));
+                }
+                remaining.add(pattern);
+            }
+        }
+        excludesPatterns = MatchPatterns.from(remaining);
+        excludedSubtreePatterns = subtrees.isEmpty() ? null : MatchPatterns.from(subtrees);
+    }
+
+    /**
+     * @param relativePath the path of an entry relative to the base directory, separated by '/' or the platform
+     *            separator, empty for the base directory itself
+     * @param isDirectory whether the entry is a directory
+     * @return whether the entry is included, i.e. would be listed by
+     *         {@link FileSetManager#getIncludedFiles(org.apache.maven.shared.model.fileset.FileSet)} if a file, or by
+     *         {@link FileSetManager#getIncludedDirectories(org.apache.maven.shared.model.fileset.FileSet)} if a
+     *         directory
+     */
+    public boolean matches(String relativePath, boolean isDirectory) {
+        String name = relativePath.replace('/', File.separatorChar);
+        if (name.endsWith(File.separator)) {
+            name = name.substring(0, name.length() - 1);
+        }
+        if (name.isEmpty()) {
+            // the base directory, which is never a file
+            return isDirectory && isIncluded(name, TOKENIZED_EMPTY) && !isExcluded(name, TOKENIZED_EMPTY, "", false);
+        }
+
+        char[][] tokenizedName = tokenize(name);
+        if (tokenizedName.length == 0) {
+            return false;
+        }
+        String fileName = new String(tokenizedName[tokenizedName.length - 1]);
+        return isIncluded(name, tokenizedName)
+                && !isExcluded(name, tokenizedName, fileName, isInExcludedSubtree(tokenizedName));
+    }
+
+    /**
+     * Match several paths at once. The type of the entries does not matter, except for the empty path denoting the
+     * base directory.
+     *
+     * @param relativePaths the paths of entries relative to the base directory
+     * @return the paths which are matched, in the order given
+     * @see #matches(String, boolean)
+     */
+    public List<String> matchAll(Collection<String> relativePaths) {
+        List<String> matched = new ArrayList<>();
+        for (String relativePath : relativePaths) {
+            if (matches(relativePath, relativePath.isEmpty())) {
+                matched.add(relativePath);
+            }
+        }
+        return matched;
+    }
+
+    boolean isIncluded(String name, char[][] tokenizedName) {
+        return includesPatterns.matches(name, tokenizedName, true);
+    }
+
+    /**
+     * @param fileName the last name of the path
+     * @param excludedSubtree whether the entry is known to be below an excluded entry
+     */
+    boolean isExcluded(String name, char[][] tokenizedName, String fileName, boolean excludedSubtree) {
+        return excludedSubtree
+                || excludedNames.contains(fileName)
+                || excludesPatterns.matches(name, tokenizedName, true);
+    }
+
+    /**
+     * @param fileName the last name of the path
+     * @return whether the entry is excluded along with everything below it, so that a walk for included entries
+     *         need not descend into it
+     */
+    boolean isExcludedSubtree(String name, char[][] tokenizedName, String fileName) {
+        return excludedSubtreeNames.contains(fileName)
+                || (excludedSubtreePatterns != null && excludedSubtreePatterns.matches(name, tokenizedName, true));
+    }
+
+    /**
+     * @return whether the entry or one of its parents is excluded along with everything below it
+     */
+    boolean isInExcludedSubtree(char[][] tokenizedName) {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < tokenizedName.length; i++) {
+            if (i > 0) {
+                name.append(File.separatorChar);
+            }
+            String fileName = new String(tokenizedName[i]);
+            name.append(fileName);
+            if (isExcludedSubtree(name.toString(), Arrays.copyOf(tokenizedName, i + 1), fileName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether entries below the directory of this name could be included
+     */
+    boolean couldHoldIncluded(String name) {
+        return includesPatterns.matchesPatternStart(name, true);
+    }
+
+    /**
+     * @return the names of a path separated by the platform separator, without empty names
+     */
+    static char[][] tokenize(String name) {
+        List<char[]> tokens = new ArrayList<>();
+        int start = 0;
+        while (start <= name.length()) {
+            int end = name.indexOf(File.separatorChar, start);
+            if (end < 0) {
+                end = name.length();
+            }
+            if (end > start) {
+                tokens.add(name.substring(start, end).toCharArray());
+            }
+            start = end + 1;
+        }
+        return tokens.toArray(TOKENIZED_EMPTY);
+    }
+
+    private static String literalName(String pattern, String prefix, String suffix) {
+        if (pattern.length() <= prefix.length() + suffix.length()
+                || !pattern.startsWith(prefix)
+                || !pattern.endsWith(suffix)) {
+            return null;
+        }
+
+        String name = pattern.substring(prefix.length(), pattern.length() - suffix.length());
+        for (char c : name.toCharArray()) {
+            if (c == '*' || c == '?' || c == File.separatorChar) {
+                return null;
+            }
+        }
+        return name;
+    }
+}
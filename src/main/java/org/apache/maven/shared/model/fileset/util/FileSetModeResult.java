@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+/**
+ * The outcome of applying the file and directory modes of a file-set to its included entries. The counts include the
+ * base directory if it is included.
+ *
+ * @see FileSetManager#applyModes(org.apache.maven.shared.model.fileset.FileSet)
+ */
+public final class FileSetModeResult {
+    private final int changedEntries;
+
+    private final int unchangedEntries;
+
+    FileSetModeResult(int changedEntries, int unchangedEntries) {
+        this.changedEntries = changedEntries;
+        this.unchangedEntries = unchangedEntries;
+    }
+
+    /**
+     * @return the number of files and directories whose permissions have been changed
+     */
+    public int getChangedEntries() {
+        return changedEntries;
+    }
+
+    /**
+     * @return the number of files and directories which already had the permissions of their mode
+     */
+    public int getUnchangedEntries() {
+        return unchangedEntries;
+    }
+
+    @Override
+    public String toString() {
+        return "changed: " + changedEntries + ", unchanged: " + unchangedEntries;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.shared.model.fileset.SetBase;
+import org.codehaus.plexus.util.AbstractScanner;
+
+/**
+ * The include and exclude patterns of a file-set, normalized the way the plexus scanner does: separators are converted
+ * to the platform separator, and a trailing separator matches everything below. The default excludes are appended to
+ * the excludes if enabled. {@link FileSetMatcher} compiles the patterns, for a {@link FileSetScanner} or on its own.
+ */
+final class FileSetPatterns {
+    /**
+     * The patterns including everything and excluding nothing.
+     */
+    static final FileSetPatterns ALL = new FileSetPatterns(null, null);
+
+    private static final String[] EMPTY_STRING_ARRAY = new String[0];
+
+    private final String[] includes;
+
+    private final String[] excludes;
+
+    private FileSetPatterns(String[] includes, String[] excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * @param set the file-set defining the patterns
+     * @return the normalized patterns of the file-set
+     */
+    static FileSetPatterns of(SetBase set) {
+        String[] includesArray = set.getIncludesArray();
+        String[] excludesArray = set.getExcludesArray();
+
+        String[] includes = includesArray.length > 0 ? normalize(includesArray) : null;
+        String[] excludes = excludesArray.length > 0 ? normalize(excludesArray) : null;
+        if (set.isUseDefaultExcludes()) {
+            String[] defaultExcludes = normalize(AbstractScanner.DEFAULTEXCLUDES);
+            if (excludes == null) {
+                excludes = defaultExcludes;
+            } else {
+                String[] newExcludes = Arrays.copyOf(excludes, excludes.length + defaultExcludes.length);
+                System.arraycopy(defaultExcludes, 0, newExcludes, excludes.length, defaultExcludes.length);
+                excludes = newExcludes;
+            }
+        }
+        return new FileSetPatterns(includes, excludes);
+    }
+
+    /**
+     * @return the normalized include patterns, <code>null</code> to include everything
+     */
+    String[] getIncludes() {
+        return includes;
+    }
+
+    /**
+     * @return the normalized exclude patterns, <code>null</code> for none
+     */
+    String[] getExcludes() {
+        return excludes;
+    }
+
+    private static String[] normalize(String[] patterns) {
+        List<String> normalized = new ArrayList<>(patterns.length);
+        for (String pattern : patterns) {
+            if (pattern == null) {
+                continue;
+            }
+            pattern = pattern.trim();
+            if (pattern.startsWith("%regex[")) {
+                pattern = File.separatorChar == '\\' ? pattern.replace("/", "\\\\") : pattern.replace("\\\\", "/");
+            } else {
+                pattern = pattern.replace(File.separatorChar == '/' ? '\\' : '/', File.separatorChar);
+                if (pattern.endsWith(File.separator)) {
+                    pattern += "**";
+                }
+            }
+            normalized.add(pattern);
+        }
+        return normalized.toArray(EMPTY_STRING_ARRAY);
+    }
+}
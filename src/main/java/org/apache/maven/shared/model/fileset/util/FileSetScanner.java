@@ -0,0 +1,1262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.shared.model.fileset.FileSet;
+
+/**
+ * Scans a base directory for the files and directories matching include and exclude patterns, with the same results
+ * as the plexus <code>DirectoryScanner</code>. The base directory may be located on any file system. Matching entries
+ * may be further deselected by an {@link AttributeSelector}. The attributes of each entry are read once, or once for
+ * all the scans sharing a {@link FileAttributeCache}, and are handed to an optional {@link Handler} for the included
+ * entries.
+ *
+ * <p>Exclude patterns of the form <code>**&#47;name&#47;**</code> and <code>**&#47;name</code> with a literal name, like
+ * most of the default excludes, are not matched as patterns but looked up by entry name. Directories excluded along
+ * with everything below them, by these or by any other pattern ending with <code>&#47;**</code>, are not listed, unless
+ * the excluded entries are requested. The same holds for entries ignored by <code>.gitignore</code> files, if
+ * enabled.</p>
+ *
+ * <p>When following symbolic links, a directory which is the same file as one of its ancestors, as told by the file
+ * key of its attributes, is classified but not listed, and reported as cycle.</p>
+ *
+ * <p>The walk may be forked over a {@link ForkJoinPool}, in which case the entries of a directory precede the entries
+ * of its subdirectories in the results.</p>
+ */
+final class FileSetScanner {
+    private static final String[] EMPTY_STRING_ARRAY = new String[0];
+
+    private static final char[][] TOKENIZED_EMPTY = new char[0][];
+
+    /**
+     * Receives the entries to delete found by {@link #scanDeletable(DeletionHandler)}, in the order of a depth-first
+     * walk.
+     *
+     * @param <D> the type of the state the handler keeps per directory
+     */
+    interface DeletionHandler<D> {
+        /**
+         * A directory is entered, before the entries below it are reported.
+         *
+         * @param name the path of the directory relative to the base directory, empty for the base directory
+         * @param parent the state of the parent directory, <code>null</code> for the base directory
+         * @return the state of the directory
+         * @throws IOException to abort the walk
+         */
+        D directoryEntered(String name, D parent) throws IOException;
+
+        /**
+         * An included file or symbolic link is to be deleted.
+         *
+         * @param name the path of the entry relative to the base directory
+         * @param parent the state of the directory holding the entry
+         * @throws IOException to abort the walk
+         */
+        void deletable(String name, D parent) throws IOException;
+
+        /**
+         * All entries below a directory have been reported.
+         *
+         * @param directory the state of the directory
+         * @param deletable whether the directory is to be deleted along with everything below it, as it is included and
+         *            nothing below it is excluded or deselected
+         * @throws IOException to abort the walk
+         */
+        void directoryLeft(D directory, boolean deletable) throws IOException;
+    }
+
+    /**
+     * Receives the included entries found by a scan, possibly from several threads at once.
+     */
+    interface Handler {
+        /**
+         * @param name the path of the entry relative to the base directory
+         * @param attributes the attributes of the entry, following symbolic links
+         * @param linkAttributes the attributes of the entry itself, same as <code>attributes</code> unless the entry
+         *            is a symbolic link
+         */
+        void included(String name, BasicFileAttributes attributes, BasicFileAttributes linkAttributes);
+    }
+
+    private final Path basedir;
+
+    private FileSetPatterns patterns = FileSetPatterns.ALL;
+
+    private FileSetMatcher matcher = new FileSetMatcher(FileSetPatterns.ALL);
+
+    private boolean followSymlinks = true;
+
+    private ForkJoinPool pool;
+
+    private AttributeSelector selector;
+
+    private boolean useGitIgnore;
+
+    /**
+     * The path of the base directory relative to the repository root, with a trailing '/' unless empty.
+     */
+    private String gitIgnorePrefix;
+
+    private int maxDepth = Integer.MAX_VALUE;
+
+    private int maxResults = Integer.MAX_VALUE;
+
+    private Handler handler;
+
+    private FileSet fileSet;
+
+    private FileSetListener listener;
+
+    private final AtomicInteger visitedDirectories = new AtomicInteger();
+
+    private final AtomicInteger results = new AtomicInteger();
+
+    private final AtomicInteger includedEntries = new AtomicInteger();
+
+    private boolean retainIncluded = true;
+
+    private Class<? extends BasicFileAttributes> attributesType = BasicFileAttributes.class;
+
+    private FileAttributeCache attributeCache;
+
+    private volatile boolean stopped;
+
+    private VisitedDirectory visitedBasedir;
+
+    private final Map<String, String> cycles = new ConcurrentHashMap<>();
+
+    private Result result;
+
+    private boolean haveSlowResults;
+
+    private boolean useGitIndex;
+
+    /**
+     * Whether the last scan looked up its candidates, from the literal includes or the Git index, instead of walking
+     * the base directory.
+     */
+    private boolean lookedUp;
+
+    /**
+     * @param basedir the existing directory to scan
+     */
+    FileSetScanner(Path basedir) {
+        this.basedir = basedir;
+    }
+
+    /**
+     * @param patterns the include and exclude patterns, compiled once for all the scans of this scanner
+     */
+    void setPatterns(FileSetPatterns patterns) {
+        this.patterns = patterns;
+        this.matcher = new FileSetMatcher(patterns);
+    }
+
+    void setFollowSymlinks(boolean followSymlinks) {
+        this.followSymlinks = followSymlinks;
+    }
+
+    /**
+     * @param pool the pool to list directories in parallel on, or <code>null</code> to list them on the calling thread
+     */
+    void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param selector the selector of the entries matching the patterns, or <code>null</code> to select all
+     */
+    void setSelector(AttributeSelector selector) {
+        this.selector = selector;
+    }
+
+    /**
+     * @param useGitIgnore whether entries ignored by <code>.gitignore</code> files are excluded
+     */
+    void setUseGitIgnore(boolean useGitIgnore) {
+        this.useGitIgnore = useGitIgnore;
+    }
+
+    /**
+     * @param useGitIndex whether to look up the candidates in the index of the Git repository holding the base
+     *            directory, if there is one, instead of walking the base directory
+     */
+    void setUseGitIndex(boolean useGitIndex) {
+        this.useGitIndex = useGitIndex;
+    }
+
+    /**
+     * @param maxDepth the depth of the deepest entries to scan, 1 for the entries of the base directory
+     */
+    void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @param maxResults the number of included entries below the base directory after which the scan stops
+     */
+    void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Stop the running scan, e.g. from a {@link Handler} which found what it was looking for. The entries found so far
+     * are kept.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    void setHandler(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * @param retainIncluded whether the included entries are collected, or only handed to the handler
+     */
+    void setRetainIncluded(boolean retainIncluded) {
+        this.retainIncluded = retainIncluded;
+    }
+
+    /**
+     * @param attributesType the type of attributes read while walking and handed to the handler, e.g.
+     *            <code>PosixFileAttributes</code>
+     */
+    void setAttributesType(Class<? extends BasicFileAttributes> attributesType) {
+        this.attributesType = attributesType;
+    }
+
+    /**
+     * @param attributeCache the attributes read by earlier scans of the same operation, to read each entry once, or
+     *            <code>null</code> to read the attributes anew
+     */
+    void setAttributeCache(FileAttributeCache attributeCache) {
+        this.attributeCache = attributeCache;
+    }
+
+    /**
+     * @param fileSet the file-set reported as scanned
+     * @param listener the listener to report to, or <code>null</code>
+     */
+    void setListener(FileSet fileSet, FileSetListener listener) {
+        this.fileSet = fileSet;
+        this.listener = listener;
+    }
+
+    /**
+     * Scan the base directory for included entries. Entries which are excluded or not included are only collected
+     * as far as the walk for included entries needs to go, the remaining ones are scanned on demand.
+     */
+    void scan() {
+        result = new Result();
+        haveSlowResults = false;
+        visitedDirectories.set(0);
+        results.set(0);
+        includedEntries.set(0);
+        cycles.clear();
+        stopped = maxResults <= 0;
+
+        Object event = FileSetEvents.beginScan();
+        long start = 0;
+        if (listener != null) {
+            listener.scanStarted(fileSet);
+            start = System.nanoTime();
+        }
+
+        classifyBasedir(result);
+
+        GitIgnore parentGitIgnore = loadParentGitIgnore();
+
+        visitedBasedir = followSymlinks ? new VisitedDirectory("", basedir, fileKey("", basedir), null) : null;
+
+        List<LiteralInclude> literalIncludes = useGitIgnore ? null : literalIncludes();
+        List<String> trackedPaths = literalIncludes == null && useGitIndex ? trackedPaths() : null;
+        lookedUp = literalIncludes != null || trackedPaths != null;
+        if (literalIncludes != null) {
+            for (LiteralInclude literalInclude : literalIncludes) {
+                if (stopped) {
+                    break;
+                }
+                lookUp(literalInclude);
+            }
+        } else if (trackedPaths != null) {
+            classifyTracked(trackedPaths, parentGitIgnore);
+        } else {
+            walkBasedir(parentGitIgnore, result);
+        }
+
+        int excludedEntries = result.filesExcluded.size() + result.dirsExcluded.size();
+        FileSetEvents.endScan(
+                event, fileSet, basedir, visitedDirectories.get(), includedEntries.get(), excludedEntries);
+        if (listener != null) {
+            listener.scanFinished(
+                    fileSet,
+                    visitedDirectories.get(),
+                    includedEntries.get(),
+                    excludedEntries,
+                    result.dirsPruned.size());
+            listener.phaseFinished(fileSet, FileSetListener.Phase.SCAN, System.nanoTime() - start);
+        }
+    }
+
+    private void classifyBasedir(Result into) {
+        if (isIncluded("", TOKENIZED_EMPTY)) {
+            if (!isExcluded("", TOKENIZED_EMPTY, "", false)) {
+                BasicFileAttributes attributes = null;
+                if (selector != null || handler != null) {
+                    attributes = readTargetAttributes("", basedir);
+                }
+                if (attributes == null || isSelected(attributes, readAttributes("", basedir))) {
+                    included(into.dirsIncluded, "", attributes, attributes);
+                } else {
+                    into.dirsDeselected.add("");
+                }
+            } else {
+                into.dirsExcluded.add("");
+            }
+        } else {
+            into.dirsNotIncluded.add("");
+        }
+    }
+
+    private void walkBasedir(GitIgnore parentGitIgnore, Result into) {
+        BasicFileAttributes basedirAttributes = readAttributes("", basedir);
+        walk(
+                new Directory(
+                        basedir,
+                        "",
+                        TOKENIZED_EMPTY,
+                        basedirAttributes != null && basedirAttributes.isSymbolicLink(),
+                        false,
+                        parentGitIgnore,
+                        visitedBasedir),
+                true,
+                into);
+    }
+
+    /**
+     * Find the includes naming an entry without wildcards, like <code>pom.xml</code>, or a directory without wildcards
+     * along with everything below it, like <code>src/main/**</code>. When all includes are of this kind, the entries
+     * are looked up directly, and only the directories of the latter kind are walked.
+     *
+     * @return the literal includes not covered by another one, or <code>null</code> if an include has wildcards, or
+     *         the path to a literal include crosses a symbolic link which is followed
+     */
+    private List<LiteralInclude> literalIncludes() {
+        String[] includes = patterns.getIncludes();
+        if (includes == null || includes.length == 0) {
+            return null;
+        }
+
+        String everything = File.separator + "**";
+        Set<String> names = new TreeSet<>();
+        Set<String> directories = new HashSet<>();
+        for (String include : includes) {
+            boolean directory = include.endsWith(everything);
+            String name = directory ? include.substring(0, include.length() - everything.length()) : include;
+            if (name.isEmpty()
+                    || name.startsWith(File.separator)
+                    || include.startsWith("%")
+                    || name.indexOf('*') >= 0
+                    || name.indexOf('?') >= 0) {
+                return null;
+            }
+            StringBuilder normalized = new StringBuilder();
+            for (char[] token : tokenize(name)) {
+                String tokenName = new String(token);
+                if (tokenName.equals(".") || tokenName.equals("..")) {
+                    return null;
+                }
+                if (normalized.length() > 0) {
+                    normalized.append(File.separatorChar);
+                }
+                normalized.append(tokenName);
+            }
+            name = normalized.toString();
+            names.add(name);
+            if (directory) {
+                directories.add(name);
+            }
+        }
+
+        List<LiteralInclude> literalIncludes = new ArrayList<>();
+        for (String name : names) {
+            char[][] tokenizedName = tokenize(name);
+            if (tokenizedName.length > maxDepth || isCovered(name, directories)) {
+                continue;
+            }
+
+            // the entries on the way, as the walk would classify them
+            Path path = basedir;
+            String ancestorName = "";
+            boolean reachable = true;
+            for (int i = 0; i < tokenizedName.length && reachable; i++) {
+                path = path.resolve(new String(tokenizedName[i]));
+                ancestorName = i == 0
+                        ? new String(tokenizedName[i])
+                        : ancestorName + File.separator + new String(tokenizedName[i]);
+                BasicFileAttributes attributes = readAttributes(ancestorName, path);
+                if (attributes == null) {
+                    reachable = false;
+                } else if (attributes.isSymbolicLink()) {
+                    if (followSymlinks) {
+                        // cycles are only detected by walking
+                        return null;
+                    }
+                    // the entries below a symbolic link which is not followed are excluded
+                    reachable = i == tokenizedName.length - 1;
+                } else if (i < tokenizedName.length - 1 && !attributes.isDirectory()) {
+                    reachable = false;
+                }
+            }
+
+            if (reachable) {
+                literalIncludes.add(new LiteralInclude(name, tokenizedName, path, directories.contains(name)));
+            }
+        }
+        return literalIncludes;
+    }
+
+    /**
+     * @return whether the entry is below one of the directories included along with everything below them
+     */
+    private static boolean isCovered(String name, Set<String> directories) {
+        for (int i = name.lastIndexOf(File.separatorChar); i > 0; i = name.lastIndexOf(File.separatorChar, i - 1)) {
+            if (directories.contains(name.substring(0, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Classify a literal include as the walk of its parent directory would, and walk it if everything below it is
+     * included. Only the included entries are collected, the others are collected by walking the whole base directory
+     * once they are requested.
+     */
+    private void lookUp(LiteralInclude literalInclude) {
+        String name = literalInclude.name;
+        char[][] tokenizedName = literalInclude.tokenizedName;
+        BasicFileAttributes linkAttributes = readAttributes(name, literalInclude.path);
+        if (linkAttributes == null) {
+            return;
+        }
+        BasicFileAttributes attributes = linkAttributes;
+        if (linkAttributes.isSymbolicLink()) {
+            attributes = readTargetAttributes(name, literalInclude.path);
+            if (attributes == null) {
+                return;
+            }
+        }
+
+        String fileName = new String(tokenizedName[tokenizedName.length - 1]);
+        boolean excludedSubtree = isInExcludedSubtree(tokenizedName);
+        boolean included = isIncluded(name, tokenizedName)
+                && !isExcluded(name, tokenizedName, fileName, excludedSubtree)
+                && isSelected(attributes, linkAttributes);
+
+        if (attributes.isDirectory()) {
+            if (included) {
+                included(result.dirsIncluded, name, attributes, linkAttributes);
+            }
+            if (literalInclude.directory && !excludedSubtree && tokenizedName.length < maxDepth && !stopped) {
+                walk(directory(name, tokenizedName, false), true, result);
+            }
+        } else if (attributes.isRegularFile() && included) {
+            included(result.filesIncluded, name, attributes, linkAttributes);
+        }
+    }
+
+    /**
+     * @return the paths below the base directory tracked by the index of the Git repository holding it, or
+     *         <code>null</code> if there is no readable index
+     */
+    private List<String> trackedPaths() {
+        try {
+            Path absoluteBasedir = basedir.toAbsolutePath().normalize();
+            Path root = GitIgnore.findRoot(absoluteBasedir);
+            Path index = GitIndex.locate(root);
+            if (index == null) {
+                return null;
+            }
+
+            String prefix = toSlashes(root.relativize(absoluteBasedir).toString());
+            prefix = prefix.isEmpty() ? prefix : prefix + '/';
+            List<String> trackedPaths = new ArrayList<>();
+            for (String path : GitIndex.readPaths(index, GitIndex.hashLength(root))) {
+                if (path.startsWith(prefix)) {
+                    String name = path.substring(prefix.length());
+                    trackedPaths.add(File.separatorChar == '/' ? name : name.replace('/', File.separatorChar));
+                }
+            }
+            return trackedPaths;
+        } catch (IOException e) {
+            // walk the base directory instead
+            return null;
+        }
+    }
+
+    /**
+     * Classify the entries tracked by the Git index and the directories holding them as the walk would classify them,
+     * without listing any directory. Only the included entries are collected, the others are collected by walking the
+     * whole base directory once they are requested.
+     */
+    private void classifyTracked(List<String> trackedPaths, GitIgnore parentGitIgnore) {
+        Map<String, TrackedDirectory> directories = new HashMap<>();
+        TrackedDirectory root = new TrackedDirectory(
+                basedir, useGitIgnore ? GitIgnore.load(parentGitIgnore, basedir, gitIgnorePrefix) : null);
+
+        for (String trackedPath : trackedPaths) {
+            if (stopped) {
+                return;
+            }
+            char[][] tokenizedName = tokenize(trackedPath);
+            if (tokenizedName.length == 0 || tokenizedName.length > maxDepth) {
+                continue;
+            }
+
+            TrackedDirectory parent = root;
+            int nameLength = 0;
+            for (int i = 0; i < tokenizedName.length - 1 && parent != null; i++) {
+                nameLength += (i == 0 ? 0 : 1) + tokenizedName[i].length;
+                String name = trackedPath.substring(0, nameLength);
+                if (directories.containsKey(name)) {
+                    parent = directories.get(name);
+                } else {
+                    parent = classifyTracked(name, Arrays.copyOf(tokenizedName, i + 1), parent, true);
+                    directories.put(name, parent);
+                }
+            }
+            if (parent != null) {
+                classifyTracked(trackedPath, tokenizedName, parent, false);
+            }
+        }
+    }
+
+    /**
+     * @param holder whether the entry holds tracked entries, so is expected to be a directory
+     * @return the directory, if the entries below it could be included, or <code>null</code>
+     */
+    private TrackedDirectory classifyTracked(
+            String name, char[][] tokenizedName, TrackedDirectory parent, boolean holder) {
+        String fileName = new String(tokenizedName[tokenizedName.length - 1]);
+        Path path = parent.path.resolve(fileName);
+        BasicFileAttributes linkAttributes = readAttributes(name, path);
+        if (linkAttributes == null) {
+            return null;
+        }
+        BasicFileAttributes attributes = linkAttributes;
+        if (linkAttributes.isSymbolicLink()) {
+            attributes = readTargetAttributes(name, path);
+            if (attributes == null) {
+                return null;
+            }
+        }
+
+        boolean excludedSubtree = matcher.isExcludedSubtree(name, tokenizedName, fileName)
+                || (parent.gitIgnore != null
+                        && parent.gitIgnore.isIgnored(gitIgnorePrefix + toSlashes(name), attributes.isDirectory()));
+        boolean included = isIncluded(name, tokenizedName)
+                && !isExcluded(name, tokenizedName, fileName, excludedSubtree)
+                && isSelected(attributes, linkAttributes);
+
+        if (attributes.isDirectory()) {
+            if (included) {
+                included(result.dirsIncluded, name, attributes, linkAttributes);
+            }
+            if (!holder
+                    || excludedSubtree
+                    || (linkAttributes.isSymbolicLink() && !followSymlinks)
+                    || !(included || couldHoldIncluded(name))) {
+                return null;
+            }
+            GitIgnore gitIgnore = useGitIgnore
+                    ? GitIgnore.load(parent.gitIgnore, path, gitIgnorePrefix + toSlashes(name) + '/')
+                    : null;
+            return new TrackedDirectory(path, gitIgnore);
+        }
+        if (attributes.isRegularFile() && included && !holder) {
+            included(result.filesIncluded, name, attributes, linkAttributes);
+        }
+        return null;
+    }
+
+    /**
+     * Walk the base directory depth-first for the entries a deletion of the included entries removes, without
+     * collecting any entries. Symbolic links are never followed, but reported as entries to delete themselves.
+     *
+     * @param handler the handler of the entries to delete
+     * @param <D> the type of the state the handler keeps per directory
+     * @throws IOException if the handler fails
+     */
+    <D> void scanDeletable(DeletionHandler<D> handler) throws IOException {
+        visitedDirectories.set(0);
+
+        boolean deletable = isIncluded("", TOKENIZED_EMPTY) && !isExcluded("", TOKENIZED_EMPTY, "", false);
+        if (deletable && selector != null) {
+            BasicFileAttributes attributes = readTargetAttributes("", basedir);
+            deletable = attributes != null && isSelected(attributes, readAttributes("", basedir));
+        }
+
+        D root = handler.directoryEntered("", null);
+        Directory dir = new Directory(basedir, "", TOKENIZED_EMPTY, false, false, loadParentGitIgnore(), null);
+        boolean keep = scanDeletable(dir, root, handler);
+        handler.directoryLeft(root, deletable && !keep);
+    }
+
+    /**
+     * @return whether an excluded or deselected entry has been found below the directory, which must be kept
+     */
+    private <D> boolean scanDeletable(Directory dir, D state, DeletionHandler<D> handler) throws IOException {
+        String vpath = dir.vpath;
+        char[][] tokenizedPath = dir.tokenizedPath;
+
+        visitedDirectories.incrementAndGet();
+        if (listener != null) {
+            listener.directoryVisited(fileSet, vpath.isEmpty() ? vpath : vpath.substring(0, vpath.length() - 1));
+        }
+
+        GitIgnore gitIgnore = null;
+        if (useGitIgnore && !dir.excludedSubtree) {
+            gitIgnore = GitIgnore.load(dir.gitIgnore, dir.path, gitIgnorePrefix + toSlashes(vpath));
+        }
+
+        DirectoryStream<Path> stream;
+        try {
+            stream = Files.newDirectoryStream(dir.path);
+        } catch (IOException e) {
+            // unreadable directories are treated as empty, as by the scan
+            return false;
+        }
+
+        boolean keep = false;
+        try (DirectoryStream<Path> children = stream) {
+            for (Path child : children) {
+                String fileName = child.getFileName().toString();
+                String name = vpath + fileName;
+                BasicFileAttributes linkAttributes = readAttributes(name, child);
+                if (linkAttributes == null) {
+                    continue;
+                }
+                BasicFileAttributes attributes = linkAttributes;
+                if (linkAttributes.isSymbolicLink()) {
+                    attributes = readTargetAttributes(name, child);
+                    if (attributes == null) {
+                        // dangling, only removed along with its directory
+                        continue;
+                    }
+                }
+
+                char[][] tokenizedName = Arrays.copyOf(tokenizedPath, tokenizedPath.length + 1);
+                tokenizedName[tokenizedPath.length] = fileName.toCharArray();
+                boolean excludedSubtree = dir.excludedSubtree
+                        || matcher.isExcludedSubtree(name, tokenizedName, fileName)
+                        || (gitIgnore != null
+                                && gitIgnore.isIgnored(gitIgnorePrefix + toSlashes(name), attributes.isDirectory()));
+
+                boolean included = isIncluded(name, tokenizedName);
+                boolean deletable = included
+                        && !isExcluded(name, tokenizedName, fileName, excludedSubtree)
+                        && isSelected(attributes, linkAttributes);
+                keep |= included && !deletable;
+
+                if (attributes.isDirectory() && !linkAttributes.isSymbolicLink()) {
+                    boolean descend;
+                    if (deletable) {
+                        descend = true;
+                    } else if (included) {
+                        // kept anyway, only entries which are not excluded along with it could be deleted
+                        descend = !excludedSubtree && couldHoldIncluded(name);
+                    } else {
+                        descend = couldHoldIncluded(name);
+                    }
+
+                    if (descend) {
+                        D subdirState = handler.directoryEntered(name, state);
+                        Directory subdir = new Directory(
+                                child, name + File.separator, tokenizedName, false, excludedSubtree, gitIgnore, null);
+                        boolean subdirKeep = scanDeletable(subdir, subdirState, handler);
+                        handler.directoryLeft(subdirState, deletable && !subdirKeep);
+                        keep |= subdirKeep;
+                    }
+                } else if (deletable && (attributes.isRegularFile() || linkAttributes.isSymbolicLink())) {
+                    handler.deletable(name, state);
+                }
+            }
+        } catch (DirectoryIteratorException e) {
+            // the remaining entries are unreadable
+        }
+        return keep;
+    }
+
+    String[] getIncludedFiles() {
+        return result.filesIncluded.toArray(EMPTY_STRING_ARRAY);
+    }
+
+    String[] getIncludedDirectories() {
+        return result.dirsIncluded.toArray(EMPTY_STRING_ARRAY);
+    }
+
+    /**
+     * @return the directories which are the same as one of their ancestors, mapped to the ancestor, both relative to
+     *         the base directory
+     */
+    Map<String, String> getCycles() {
+        return cycles;
+    }
+
+    String[] getExcludedFiles() {
+        slowScan();
+        return result.filesExcluded.toArray(EMPTY_STRING_ARRAY);
+    }
+
+    String[] getExcludedDirectories() {
+        slowScan();
+        return result.dirsExcluded.toArray(EMPTY_STRING_ARRAY);
+    }
+
+    String[] getDeselectedFiles() {
+        slowScan();
+        return result.filesDeselected.toArray(EMPTY_STRING_ARRAY);
+    }
+
+    String[] getDeselectedDirectories() {
+        slowScan();
+        return result.dirsDeselected.toArray(EMPTY_STRING_ARRAY);
+    }
+
+    /**
+     * Scan the excluded and not included directories which have been skipped because they cannot hold included
+     * entries, or because they have been excluded by name along with everything below them.
+     */
+    private void slowScan() {
+        if (haveSlowResults) {
+            return;
+        }
+
+        Handler fastHandler = handler;
+        handler = null;
+        try {
+            if (lookedUp) {
+                // the candidates have been looked up without listing the directories holding them
+                Result walked = new Result();
+                results.set(0);
+                stopped = maxResults <= 0;
+                classifyBasedir(walked);
+                walkBasedir(loadParentGitIgnore(), walked);
+                result = walked;
+                lookedUp = false;
+            }
+
+            List<String> skipped = new ArrayList<>(result.dirsExcluded);
+            skipped.addAll(result.dirsNotIncluded);
+            List<String> pruned = new ArrayList<>(result.dirsPruned);
+            for (String name : skipped) {
+                if (!couldHoldIncluded(name)) {
+                    char[][] tokenizedName = tokenize(name);
+                    walk(directory(name, tokenizedName, isInExcludedSubtree(tokenizedName)), false, result);
+                }
+            }
+            for (String name : pruned) {
+                walk(directory(name, tokenize(name), true), false, result);
+            }
+        } finally {
+            handler = fastHandler;
+        }
+
+        haveSlowResults = true;
+    }
+
+    private Directory directory(String name, char[][] tokenizedName, boolean excludedSubtree) {
+        // resolved by name, as the separator of the file system may differ from the one of the names
+        Path path = basedir;
+        VisitedDirectory visited = visitedBasedir;
+        StringBuilder ancestorName = new StringBuilder();
+        for (char[] token : tokenizedName) {
+            path = path.resolve(new String(token));
+            if (visited != null) {
+                if (ancestorName.length() > 0) {
+                    ancestorName.append(File.separatorChar);
+                }
+                ancestorName.append(token);
+                String ancestor = ancestorName.toString();
+                visited = new VisitedDirectory(ancestor, path, fileKey(ancestor, path), visited);
+            }
+        }
+        BasicFileAttributes linkAttributes = readAttributes(name, path);
+        boolean symbolicLink = linkAttributes != null && linkAttributes.isSymbolicLink();
+        return new Directory(path, name + File.separator, tokenizedName, symbolicLink, excludedSubtree, null, visited);
+    }
+
+    private void walk(Directory dir, boolean fast, Result into) {
+        if (pool != null) {
+            DirectoryTask task = new DirectoryTask(dir, fast);
+            pool.invoke(task);
+            into.addAll(task.result);
+        } else {
+            scandir(dir, fast, into, null);
+        }
+    }
+
+    /**
+     * List a directory and classify its entries.
+     *
+     * @param dir the directory to list
+     * @param fast <code>true</code> to only descend into directories which could hold included entries,
+     *            <code>false</code> to descend into all directories
+     * @param into the result to add the entries to
+     * @param forks the list to add the subdirectory tasks to when forking, <code>null</code> to descend directly
+     */
+    private void scandir(Directory dir, boolean fast, Result into, List<DirectoryTask> forks) {
+        String vpath = dir.vpath;
+        char[][] tokenizedPath = dir.tokenizedPath;
+
+        visitedDirectories.incrementAndGet();
+        if (listener != null) {
+            listener.directoryVisited(fileSet, vpath.isEmpty() ? vpath : vpath.substring(0, vpath.length() - 1));
+        }
+
+        GitIgnore gitIgnore = null;
+        if (useGitIgnore && !dir.excludedSubtree) {
+            gitIgnore = GitIgnore.load(dir.gitIgnore, dir.path, gitIgnorePrefix + toSlashes(vpath));
+        }
+
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir.path)) {
+            if (dir.symbolicLink && !followSymlinks) {
+                for (Path child : children) {
+                    String name = vpath + child.getFileName();
+                    BasicFileAttributes attributes = readTargetAttributes(name, child);
+                    if (attributes != null && attributes.isDirectory()) {
+                        into.dirsExcluded.add(name);
+                    } else {
+                        into.filesExcluded.add(name);
+                    }
+                }
+                return;
+            }
+
+            for (Path child : children) {
+                if (stopped) {
+                    return;
+                }
+
+                String fileName = child.getFileName().toString();
+                String name = vpath + fileName;
+                BasicFileAttributes linkAttributes = readAttributes(name, child);
+                if (linkAttributes == null) {
+                    continue;
+                }
+                BasicFileAttributes attributes = linkAttributes;
+                if (linkAttributes.isSymbolicLink()) {
+                    attributes = readTargetAttributes(name, child);
+                    if (attributes == null) {
+                        // dangling, neither a file nor a directory
+                        continue;
+                    }
+                }
+
+                char[][] tokenizedName = Arrays.copyOf(tokenizedPath, tokenizedPath.length + 1);
+                tokenizedName[tokenizedPath.length] = fileName.toCharArray();
+                boolean excludedSubtree = dir.excludedSubtree
+                        || matcher.isExcludedSubtree(name, tokenizedName, fileName)
+                        || (gitIgnore != null
+                                && gitIgnore.isIgnored(gitIgnorePrefix + toSlashes(name), attributes.isDirectory()));
+
+                if (attributes.isDirectory()) {
+                    boolean descend = !fast;
+                    if (isIncluded(name, tokenizedName)) {
+                        if (!isExcluded(name, tokenizedName, fileName, excludedSubtree)) {
+                            if (isSelected(attributes, linkAttributes)) {
+                                included(into.dirsIncluded, name, attributes, linkAttributes);
+                                descend = true;
+                            } else {
+                                into.dirsDeselected.add(name);
+                                descend |= couldHoldIncluded(name);
+                            }
+                        } else {
+                            into.dirsExcluded.add(name);
+                            descend |= couldHoldIncluded(name);
+                        }
+                    } else {
+                        into.dirsNotIncluded.add(name);
+                        descend |= couldHoldIncluded(name);
+                    }
+
+                    if (descend && tokenizedName.length < maxDepth) {
+                        VisitedDirectory visited = null;
+                        if (dir.visited != null) {
+                            VisitedDirectory ancestor =
+                                    dir.visited.find(child, attributes.fileKey(), linkAttributes.isSymbolicLink());
+                            if (ancestor != null) {
+                                cycles.put(name, ancestor.name);
+                                if (listener != null) {
+                                    listener.cycleDetected(fileSet, name, ancestor.name);
+                                }
+                                continue;
+                            }
+                            visited = new VisitedDirectory(name, child, attributes.fileKey(), dir.visited);
+                        }
+
+                        if (fast && excludedSubtree) {
+                            // nothing below can be included, list it only if the excluded entries are requested
+                            into.dirsPruned.add(name);
+                            continue;
+                        }
+
+                        Directory subdir = new Directory(
+                                child,
+                                name + File.separator,
+                                tokenizedName,
+                                linkAttributes.isSymbolicLink(),
+                                excludedSubtree,
+                                gitIgnore,
+                                visited);
+                        if (forks != null) {
+                            forks.add(new DirectoryTask(subdir, fast));
+                        } else {
+                            scandir(subdir, fast, into, null);
+                        }
+                    }
+                } else if (attributes.isRegularFile()) {
+                    if (isIncluded(name, tokenizedName)) {
+                        if (!isExcluded(name, tokenizedName, fileName, excludedSubtree)) {
+                            if (isSelected(attributes, linkAttributes)) {
+                                included(into.filesIncluded, name, attributes, linkAttributes);
+                            } else {
+                                into.filesDeselected.add(name);
+                            }
+                        } else {
+                            into.filesExcluded.add(name);
+                        }
+                    } else {
+                        into.filesNotIncluded.add(name);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // unreadable directories are treated as empty, as the plexus scanner does
+        }
+    }
+
+    private void included(
+            List<String> into, String name, BasicFileAttributes attributes, BasicFileAttributes linkAttributes) {
+        if (retainIncluded) {
+            into.add(name);
+        }
+        includedEntries.incrementAndGet();
+        if (handler != null && attributes != null) {
+            handler.included(name, attributes, linkAttributes);
+        }
+        if (!name.isEmpty() && results.incrementAndGet() >= maxResults) {
+            stopped = true;
+        }
+    }
+
+    private boolean isSelected(BasicFileAttributes attributes, BasicFileAttributes linkAttributes) {
+        return selector == null || linkAttributes == null || selector.isSelected(attributes, linkAttributes);
+    }
+
+    private boolean isIncluded(String name, char[][] tokenizedName) {
+        return matcher.isIncluded(name, tokenizedName);
+    }
+
+    private boolean isExcluded(String name, char[][] tokenizedName, String fileName, boolean excludedSubtree) {
+        return matcher.isExcluded(name, tokenizedName, fileName, excludedSubtree);
+    }
+
+    private boolean isInExcludedSubtree(char[][] tokenizedName) {
+        return matcher.isInExcludedSubtree(tokenizedName);
+    }
+
+    private GitIgnore loadParentGitIgnore() {
+        if (!useGitIgnore) {
+            return null;
+        }
+        Path absoluteBasedir = basedir.toAbsolutePath().normalize();
+        Path root = GitIgnore.findRoot(absoluteBasedir);
+        String relativeBasedir = root.relativize(absoluteBasedir).toString().replace(File.separatorChar, '/');
+        gitIgnorePrefix = relativeBasedir.isEmpty() ? "" : relativeBasedir + '/';
+        return GitIgnore.loadParents(root, absoluteBasedir);
+    }
+
+    private boolean couldHoldIncluded(String name) {
+        return matcher.couldHoldIncluded(name);
+    }
+
+    private BasicFileAttributes readAttributes(String name, Path path) {
+        if (attributeCache != null) {
+            return attributeCache.get(name, path, attributesType);
+        }
+        try {
+            return Files.readAttributes(path, attributesType, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private BasicFileAttributes readTargetAttributes(String name, Path path) {
+        if (attributeCache != null) {
+            return attributeCache.getTarget(name, path, attributesType);
+        }
+        try {
+            return Files.readAttributes(path, attributesType);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Object fileKey(String name, Path directory) {
+        BasicFileAttributes attributes = readTargetAttributes(name, directory);
+        return attributes != null ? attributes.fileKey() : null;
+    }
+
+    private static String toSlashes(String path) {
+        return File.separatorChar == '/' ? path : path.replace(File.separatorChar, '/');
+    }
+
+    private static char[][] tokenize(String name) {
+        return FileSetMatcher.tokenize(name);
+    }
+
+    /**
+     * A directory holding entries tracked by the Git index.
+     */
+    private static final class TrackedDirectory {
+        final Path path;
+
+        /**
+         * The rules of the <code>.gitignore</code> files applying to the entries of the directory.
+         */
+        final GitIgnore gitIgnore;
+
+        TrackedDirectory(Path path, GitIgnore gitIgnore) {
+            this.path = path;
+            this.gitIgnore = gitIgnore;
+        }
+    }
+
+    /**
+     * An include without wildcards.
+     */
+    private static final class LiteralInclude {
+        final String name;
+
+        final char[][] tokenizedName;
+
+        final Path path;
+
+        /**
+         * Whether everything below the entry is included, too.
+         */
+        final boolean directory;
+
+        LiteralInclude(String name, char[][] tokenizedName, Path path, boolean directory) {
+            this.name = name;
+            this.tokenizedName = tokenizedName;
+            this.path = path;
+            this.directory = directory;
+        }
+    }
+
+    /**
+     * The classified entries of a scan.
+     */
+    private static final class Result {
+        final List<String> filesIncluded = new ArrayList<>();
+
+        final List<String> filesNotIncluded = new ArrayList<>();
+
+        final List<String> filesExcluded = new ArrayList<>();
+
+        final List<String> dirsIncluded = new ArrayList<>();
+
+        final List<String> dirsNotIncluded = new ArrayList<>();
+
+        final List<String> dirsExcluded = new ArrayList<>();
+
+        final List<String> filesDeselected = new ArrayList<>();
+
+        final List<String> dirsDeselected = new ArrayList<>();
+
+        final List<String> dirsPruned = new ArrayList<>();
+
+        void addAll(Result other) {
+            filesIncluded.addAll(other.filesIncluded);
+            filesNotIncluded.addAll(other.filesNotIncluded);
+            filesExcluded.addAll(other.filesExcluded);
+            dirsIncluded.addAll(other.dirsIncluded);
+            dirsNotIncluded.addAll(other.dirsNotIncluded);
+            dirsExcluded.addAll(other.dirsExcluded);
+            filesDeselected.addAll(other.filesDeselected);
+            dirsDeselected.addAll(other.dirsDeselected);
+            dirsPruned.addAll(other.dirsPruned);
+        }
+    }
+
+    /**
+     * A directory to list.
+     */
+    private static final class Directory {
+        final Path path;
+
+        /**
+         * The path relative to the base directory, with a trailing separator unless empty.
+         */
+        final String vpath;
+
+        final char[][] tokenizedPath;
+
+        final boolean symbolicLink;
+
+        /**
+         * Whether the directory is excluded by name along with everything below it.
+         */
+        final boolean excludedSubtree;
+
+        /**
+         * The <code>.gitignore</code> rules applying in the parent directory, or <code>null</code>.
+         */
+        final GitIgnore gitIgnore;
+
+        /**
+         * The directory and its ancestors, when following symbolic links, or <code>null</code>.
+         */
+        final VisitedDirectory visited;
+
+        Directory(
+                Path path,
+                String vpath,
+                char[][] tokenizedPath,
+                boolean symbolicLink,
+                boolean excludedSubtree,
+                GitIgnore gitIgnore,
+                VisitedDirectory visited) {
+            this.path = path;
+            this.vpath = vpath;
+            this.tokenizedPath = tokenizedPath;
+            this.symbolicLink = symbolicLink;
+            this.excludedSubtree = excludedSubtree;
+            this.gitIgnore = gitIgnore;
+            this.visited = visited;
+        }
+    }
+
+    /**
+     * A directory on the path from the base directory to the directory being listed, identified by its file key.
+     */
+    private static final class VisitedDirectory {
+        /**
+         * The path relative to the base directory, empty for the base directory.
+         */
+        final String name;
+
+        final Path path;
+
+        /**
+         * The file key of the directory, <code>null</code> if the file system does not provide one.
+         */
+        final Object fileKey;
+
+        final VisitedDirectory parent;
+
+        VisitedDirectory(String name, Path path, Object fileKey, VisitedDirectory parent) {
+            this.name = name;
+            this.path = path;
+            this.fileKey = fileKey;
+            this.parent = parent;
+        }
+
+        /**
+         * Find the directory among this directory and its ancestors which is the same file as the given directory.
+         * Without file keys, only symbolic links are compared, by path.
+         *
+         * @param directory the directory
+         * @param fileKey the file key of the directory, or <code>null</code>
+         * @param symbolicLink whether the directory is reached through a symbolic link
+         * @return the same directory, or <code>null</code> if the directory is not an ancestor
+         */
+        VisitedDirectory find(Path directory, Object fileKey, boolean symbolicLink) {
+            for (VisitedDirectory visited = this; visited != null; visited = visited.parent) {
+                if (fileKey != null
+                        ? fileKey.equals(visited.fileKey)
+                        : symbolicLink && isSameFile(directory, visited)) {
+                    return visited;
+                }
+            }
+            return null;
+        }
+
+        private static boolean isSameFile(Path directory, VisitedDirectory visited) {
+            try {
+                return Files.isSameFile(directory, visited.path);
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Lists a directory and forks the listing of its subdirectories.
+     */
+    private final class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Directory dir;
+
+        private final boolean fast;
+
+        private final Result result = new Result();
+
+        DirectoryTask(Directory dir, boolean fast) {
+            this.dir = dir;
+            this.fast = fast;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> forks = new ArrayList<>();
+            scandir(dir, fast, result, forks);
+            invokeAll(forks);
+            for (DirectoryTask fork : forks) {
+                result.addAll(fork.result);
+            }
+        }
+    }
+}
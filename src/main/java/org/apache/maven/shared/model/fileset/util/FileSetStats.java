@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Disk usage of the entries included by a file-set, as computed by {@link FileSetManager#stats(
+ * org.apache.maven.shared.model.fileset.FileSet, boolean)}.
+ *
+ * <p>Sizes are those of the included entries themselves: a symbolic link counts with its own size, unless the file-set
+ * follows symbolic links, in which case it counts with the size of its target. Allocated bytes are the file sizes
+ * rounded up to the block size of the file store of the base directory, which approximates the space freed by deleting
+ * the files.</p>
+ */
+public final class FileSetStats {
+    private final long fileCount;
+
+    private final long directoryCount;
+
+    private final long totalBytes;
+
+    private final long allocatedBytes;
+
+    private final Map<String, FileSetStats> topLevelDirectories;
+
+    FileSetStats(
+            long fileCount,
+            long directoryCount,
+            long totalBytes,
+            long allocatedBytes,
+            Map<String, FileSetStats> topLevelDirectories) {
+        this.fileCount = fileCount;
+        this.directoryCount = directoryCount;
+        this.totalBytes = totalBytes;
+        this.allocatedBytes = allocatedBytes;
+        this.topLevelDirectories = Collections.unmodifiableMap(topLevelDirectories);
+    }
+
+    /**
+     * @return the number of included files
+     */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return the number of included directories, including the base directory itself if it is included
+     */
+    public long getDirectoryCount() {
+        return directoryCount;
+    }
+
+    /**
+     * @return the total size of the included files in bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the number of bytes allocated on disk for the included files
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return the usage of the included entries per top-level directory of the base directory, sorted by directory
+     *         name, empty unless requested. The base directory itself and the files directly in it are accounted
+     *         under the empty name, so that the usages of the breakdown add up to the totals.
+     */
+    public Map<String, FileSetStats> getTopLevelDirectories() {
+        return topLevelDirectories;
+    }
+
+    @Override
+    public String toString() {
+        return "FileSetStats[files=" + fileCount + ", directories=" + directoryCount + ", totalBytes=" + totalBytes
+                + ", allocatedBytes=" + allocatedBytes + "]";
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of synchronizing a file-set with its output directory.
+ *
+ * @see FileSetManager#sync(org.apache.maven.shared.model.fileset.FileSet)
+ */
+public final class FileSetSyncResult {
+    private final List<String> copiedFiles;
+
+    private final int unchangedFiles;
+
+    private final List<String> deletedPaths;
+
+    FileSetSyncResult(List<String> copiedFiles, int unchangedFiles, List<String> deletedPaths) {
+        this.copiedFiles = Collections.unmodifiableList(copiedFiles);
+        this.unchangedFiles = unchangedFiles;
+        this.deletedPaths = Collections.unmodifiableList(deletedPaths);
+    }
+
+    /**
+     * @return the destination paths which have been copied, relative to the output directory
+     */
+    public List<String> getCopiedFiles() {
+        return copiedFiles;
+    }
+
+    /**
+     * @return the number of destination files which were already up to date
+     */
+    public int getUnchangedFiles() {
+        return unchangedFiles;
+    }
+
+    /**
+     * @return the orphaned paths which have been deleted, relative to the output directory
+     */
+    public List<String> getDeletedPaths() {
+        return deletedPaths;
+    }
+
+    @Override
+    public String toString() {
+        return "copied: " + copiedFiles.size() + ", unchanged: " + unchangedFiles + ", deleted: " + deletedPaths.size();
+    }
+}
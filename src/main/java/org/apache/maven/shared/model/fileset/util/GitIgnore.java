@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The compiled rules of the <code>.gitignore</code> files applying in a directory: the rules of the file in the
+ * directory itself on top of the rules applying in its parent. Directories without a <code>.gitignore</code> file
+ * share the instance of their parent, so each file is read and compiled once per scan.
+ *
+ * <p>Paths are '/'-separated and relative to the root of the repository, which is the closest directory holding a
+ * <code>.git</code> entry. The rules of <code>.git/info/exclude</code> and of the global excludes file are not
+ * considered.</p>
+ */
+final class GitIgnore {
+    static final String FILE_NAME = ".gitignore";
+
+    private final GitIgnore parent;
+
+    /**
+     * The path of the directory holding the rules, relative to the repository root, with a trailing '/' unless empty.
+     */
+    private final String base;
+
+    private final Rule[] rules;
+
+    private GitIgnore(GitIgnore parent, String base, Rule[] rules) {
+        this.parent = parent;
+        this.base = base;
+        this.rules = rules;
+    }
+
+    /**
+     * Find the root of the repository holding a directory.
+     *
+     * @param directory the absolute path of the directory
+     * @return the root of the repository, or the directory itself if it is not located in a repository
+     */
+    static Path findRoot(Path directory) {
+        for (Path dir = directory; dir != null; dir = dir.getParent()) {
+            if (Files.exists(dir.resolve(".git"))) {
+                return dir;
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * @param root the root of the repository
+     * @param directory the absolute path of a directory below the root
+     * @return the rules of the <code>.gitignore</code> files in the root and the directories down to the parent of the
+     *         given directory, or <code>null</code> if there are none, in particular if the directory is the root
+     */
+    static GitIgnore loadParents(Path root, Path directory) {
+        GitIgnore rules = null;
+        Path relative = root.relativize(directory);
+        if (relative.toString().isEmpty()) {
+            // the empty path still has one name, which would load the rules of the directory itself
+            return null;
+        }
+        Path dir = root;
+        StringBuilder base = new StringBuilder();
+        for (Path segment : relative) {
+            rules = load(rules, dir, base.toString());
+            dir = dir.resolve(segment);
+            base.append(segment).append('/');
+        }
+        return rules;
+    }
+
+    /**
+     * @param parent the rules applying in the parent directory, or <code>null</code>
+     * @param directory the directory
+     * @param base the path of the directory relative to the repository root, with a trailing '/' unless empty
+     * @return the rules applying in the directory, which are the parent rules if it has no <code>.gitignore</code> file
+     */
+    static GitIgnore load(GitIgnore parent, Path directory, String base) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(directory.resolve(FILE_NAME), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // no or unreadable file
+            return parent;
+        }
+
+        List<Rule> rules = new ArrayList<>();
+        for (String line : lines) {
+            Rule rule = Rule.parse(line);
+            if (rule != null) {
+                rules.add(rule);
+            }
+        }
+        return rules.isEmpty() ? parent : new GitIgnore(parent, base, rules.toArray(new Rule[0]));
+    }
+
+    /**
+     * @param path the path of the entry relative to the repository root
+     * @param directory whether the entry is a directory
+     * @return <code>true</code> if the last rule matching the entry ignores it
+     */
+    boolean isIgnored(String path, boolean directory) {
+        for (GitIgnore ignore = this; ignore != null; ignore = ignore.parent) {
+            String relative = path.substring(ignore.base.length());
+            for (int i = ignore.rules.length - 1; i >= 0; i--) {
+                Rule rule = ignore.rules[i];
+                if (rule.matches(relative, directory)) {
+                    return !rule.negated;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A single pattern line of a <code>.gitignore</code> file.
+     */
+    private static final class Rule {
+        final Pattern pattern;
+
+        final boolean negated;
+
+        final boolean directoryOnly;
+
+        /**
+         * Whether the pattern matches the path relative to the <code>.gitignore</code> file rather than the name.
+         */
+        final boolean anchored;
+
+        private Rule(Pattern pattern, boolean negated, boolean directoryOnly, boolean anchored) {
+            this.pattern = pattern;
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.anchored = anchored;
+        }
+
+        static Rule parse(String line) {
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                return null;
+            }
+
+            int end = line.length();
+            while (end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) {
+                end--;
+            }
+            String glob = line.substring(0, end);
+
+            boolean negated = glob.startsWith("!");
+            if (negated) {
+                glob = glob.substring(1);
+            }
+
+            boolean directoryOnly = glob.endsWith("/");
+            if (directoryOnly) {
+                glob = glob.substring(0, glob.length() - 1);
+            }
+
+            boolean anchored = glob.indexOf('/') >= 0;
+            if (glob.startsWith("/")) {
+                glob = glob.substring(1);
+            }
+
+            if (glob.isEmpty()) {
+                return null;
+            }
+            return new Rule(Pattern.compile(toRegex(glob)), negated, directoryOnly, anchored);
+        }
+
+        boolean matches(String path, boolean directory) {
+            if (directoryOnly && !directory) {
+                return false;
+            }
+            String target = anchored ? path : path.substring(path.lastIndexOf('/') + 1);
+            return pattern.matcher(target).matches();
+        }
+
+        private static String toRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            int length = glob.length();
+            int i = 0;
+            while (i < length) {
+                char c = glob.charAt(i);
+                if (c == '*') {
+                    boolean segmentStart = i == 0 || glob.charAt(i - 1) == '/';
+                    if (segmentStart && i + 1 < length && glob.charAt(i + 1) == '*') {
+                        if (i + 2 == length) {
+                            regex.append(".*");
+                            i += 2;
+                            continue;
+                        }
+                        if (glob.charAt(i + 2) == '/') {
+                            regex.append("(?:.*/)?");
+                            i += 3;
+                            continue;
+                        }
+                    }
+                    regex.append("[^/]*");
+                    while (i < length && glob.charAt(i) == '*') {
+                        i++;
+                    }
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                    i++;
+                } else if (c == '[' && glob.indexOf(']', i + 2) > 0) {
+                    int close = glob.indexOf(']', i + 2);
+                    regex.append('[');
+                    int start = i + 1;
+                    if (glob.charAt(start) == '!' || glob.charAt(start) == '^') {
+                        regex.append('^');
+                        start++;
+                    }
+                    for (int j = start; j < close; j++) {
+                        appendLiteral(regex, glob.charAt(j), true);
+                    }
+                    regex.append(']');
+                    i = close + 1;
+                } else if (c == '\\' && i + 1 < length) {
+                    appendLiteral(regex, glob.charAt(i + 1), false);
+                    i += 2;
+                } else {
+                    appendLiteral(regex, c, false);
+                    i++;
+                }
+            }
+            return regex.toString();
+        }
+
+        private static void appendLiteral(StringBuilder regex, char c, boolean inClass) {
+            if (!Character.isLetterOrDigit(c) && !(inClass && c == '-')) {
+                regex.append('\\');
+            }
+            regex.append(c);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the paths tracked by a Git repository from its index file, in the versions 2 to 4 of the format. Only the
+ * paths are read: the cached file attributes and object names are skipped, as are the extensions.
+ *
+ * @see <a href="https://git-scm.com/docs/index-format">Git index format</a>
+ */
+final class GitIndex {
+    private static final int SIGNATURE = 0x44495243; // "DIRC"
+
+    private static final int MODE_TYPE_MASK = 0170000;
+
+    private static final int MODE_DIRECTORY = 0040000;
+
+    private static final int MODE_GITLINK = 0160000;
+
+    private static final int FLAG_EXTENDED = 0x4000;
+
+    private static final int FLAG_STAGE_MASK = 0x3000;
+
+    private static final int NAME_LENGTH_MASK = 0xFFF;
+
+    private static final int EXTENDED_FLAG_SKIP_WORKTREE = 0x4000;
+
+    /**
+     * The size of the fields of an entry preceding the object name: the change and modification times, the device,
+     * inode, mode, user, group and file size.
+     */
+    private static final int STAT_LENGTH = 40;
+
+    private GitIndex() {}
+
+    /**
+     * @param root the root of the working tree of a repository
+     * @return the index file of the repository, or <code>null</code> if there is none
+     * @throws IOException if the <code>.git</code> file of a linked working tree cannot be read
+     */
+    static Path locate(Path root) throws IOException {
+        Path gitDir = gitDir(root);
+        if (gitDir == null) {
+            return null;
+        }
+        Path index = gitDir.resolve("index");
+        return Files.isRegularFile(index) ? index : null;
+    }
+
+    /**
+     * Read the paths of the entries checked out in the working tree, i.e. without the entries of submodules and the
+     * entries excluded from a sparse checkout. Paths in a merge conflict are read once.
+     *
+     * @param index the index file
+     * @param hashLength the length of the object names in bytes, 20 for SHA-1 and 32 for SHA-256 repositories
+     * @return the paths relative to the root of the working tree, separated by '/', sorted as by Git
+     * @throws IOException if the file cannot be read, is corrupt or of an unsupported version, or is a sparse index
+     *             which does not list the entries below some directories
+     */
+    static List<String> readPaths(Path index, int hashLength) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(index));
+        try {
+            if (buffer.getInt() != SIGNATURE) {
+                throw new IOException("Not a Git index: " + index);
+            }
+            int version = buffer.getInt();
+            if (version < 2 || version > 4) {
+                throw new IOException("Unsupported Git index version " + version + ": " + index);
+            }
+            int entries = buffer.getInt();
+
+            List<String> paths = new ArrayList<>(entries);
+            byte[] name = new byte[256];
+            int nameLength = 0;
+            String previous = null;
+            for (int i = 0; i < entries; i++) {
+                int entryStart = buffer.position();
+                buffer.position(entryStart + 24);
+                int mode = buffer.getInt();
+                buffer.position(entryStart + STAT_LENGTH + hashLength);
+                int flags = buffer.getShort() & 0xFFFF;
+                int extendedFlags = 0;
+                if ((flags & FLAG_EXTENDED) != 0) {
+                    if (version < 3) {
+                        throw new IOException("Extended flags in a Git index of version 2: " + index);
+                    }
+                    extendedFlags = buffer.getShort() & 0xFFFF;
+                }
+
+                if (version == 4) {
+                    // the name replaces the given number of bytes at the end of the previous name
+                    int strip = readOffset(buffer);
+                    if (strip > nameLength) {
+                        throw new IOException("Corrupt Git index: " + index);
+                    }
+                    nameLength -= strip;
+                } else {
+                    nameLength = 0;
+                }
+                for (byte b = buffer.get(); b != 0; b = buffer.get()) {
+                    if (nameLength == name.length) {
+                        name = Arrays.copyOf(name, name.length * 2);
+                    }
+                    name[nameLength++] = b;
+                }
+                if (version < 4) {
+                    // padded with 1 to 8 NUL bytes to a multiple of 8, of which the terminating NUL has been read
+                    int length = buffer.position() - 1 - entryStart;
+                    buffer.position(entryStart + ((length + 8) & ~7));
+                }
+                if ((flags & NAME_LENGTH_MASK) < NAME_LENGTH_MASK && (flags & NAME_LENGTH_MASK) != nameLength) {
+                    throw new IOException("Corrupt Git index: " + index);
+                }
+
+                int type = mode & MODE_TYPE_MASK;
+                if (type == MODE_DIRECTORY) {
+                    throw new IOException("Sparse Git index, entries below directories are not listed: " + index);
+                }
+                if (type == MODE_GITLINK || (extendedFlags & EXTENDED_FLAG_SKIP_WORKTREE) != 0) {
+                    continue;
+                }
+                String path = new String(name, 0, nameLength, StandardCharsets.UTF_8);
+                if ((flags & FLAG_STAGE_MASK) != 0 && path.equals(previous)) {
+                    continue;
+                }
+                paths.add(path);
+                previous = path;
+            }
+            return paths;
+        } catch (RuntimeException e) {
+            // reading beyond the end of the file, or positioning beyond it
+            throw new IOException("Corrupt Git index: " + index, e);
+        }
+    }
+
+    /**
+     * @param root the root of the working tree of a repository
+     * @return the length of the object names of the repository in bytes
+     * @throws IOException if the <code>.git</code> file of a linked working tree cannot be read
+     */
+    static int hashLength(Path root) throws IOException {
+        Path gitDir = gitDir(root);
+        Path config = gitDir != null ? gitDir.resolve("config") : null;
+        if (config != null && Files.isRegularFile(config)) {
+            for (String line : Files.readAllLines(config, StandardCharsets.UTF_8)) {
+                String setting = line.replaceAll("\\s", "").toLowerCase(Locale.ROOT);
+                if (setting.equals("objectformat=sha256")) {
+                    return 32;
+                }
+            }
+        }
+        return 20;
+    }
+
+    /**
+     * @return the Git directory of the working tree, which is either the <code>.git</code> directory, or the directory
+     *         a <code>.git</code> file points to in linked working trees and submodules
+     */
+    private static Path gitDir(Path root) throws IOException {
+        Path dotGit = root.resolve(".git");
+        if (Files.isDirectory(dotGit)) {
+            return dotGit;
+        }
+        if (Files.isRegularFile(dotGit)) {
+            for (String line : Files.readAllLines(dotGit, StandardCharsets.UTF_8)) {
+                if (line.startsWith("gitdir:")) {
+                    return root.resolve(line.substring("gitdir:".length()).trim());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read a number in the variable length encoding of Git, which differs from the common one by adding one to the
+     * value before each continuation, so that each number has exactly one encoding.
+     */
+    private static int readOffset(ByteBuffer buffer) throws IOException {
+        int b = buffer.get() & 0xFF;
+        int value = b & 0x7F;
+        while ((b & 0x80) != 0) {
+            if (value >= 1 << 24) {
+                throw new IOException("Corrupt Git index");
+            }
+            b = buffer.get() & 0xFF;
+            value = ((value + 1) << 7) | (b & 0x7F);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits of the file operations of a {@link FileSetManager}, such as copying, hashing and deleting. The limits apply to
+ * each file store separately, and are shared by all operations of the manager running at the same time, e.g. to keep a
+ * large cleanup from starving other builds on the same disk.
+ *
+ * @see FileSetManager#setIoOptions(IoOptions)
+ */
+public class IoOptions {
+    private int maxConcurrency = Runtime.getRuntime().availableProcessors();
+
+    private final Map<String, Integer> maxConcurrencyByType = new HashMap<>();
+
+    private long maxOperationsPerSecond;
+
+    private long maxBytesPerSecond;
+
+    /**
+     * @return the number of files processed at the same time on a file store
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Set the number of files processed at the same time on a file store, unless set for the type of the store. The
+     * number of available processors by default. More concurrency pays off on solid state disks, but may slow down
+     * spinning disks and network file systems, for which 1 processes the files one after the other on the calling
+     * thread.
+     *
+     * @param maxConcurrency the number of files processed at the same time
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @param fileStoreType the type of a file store
+     * @return the number of files processed at the same time on a file store of the given type
+     */
+    public int getMaxConcurrency(String fileStoreType) {
+        Integer typeMaxConcurrency = maxConcurrencyByType.get(fileStoreType);
+        return typeMaxConcurrency != null ? typeMaxConcurrency : maxConcurrency;
+    }
+
+    /**
+     * Set the number of files processed at the same time on file stores of the given type, e.g. 1 for <code>nfs</code>.
+     *
+     * @param fileStoreType the type of file store, as returned by {@link java.nio.file.FileStore#type()}
+     * @param maxConcurrency the number of files processed at the same time
+     */
+    public void setMaxConcurrency(String fileStoreType, int maxConcurrency) {
+        maxConcurrencyByType.put(fileStoreType, maxConcurrency);
+    }
+
+    /**
+     * @return the number of files processed per second on a file store, 0 if unlimited
+     */
+    public long getMaxOperationsPerSecond() {
+        return maxOperationsPerSecond;
+    }
+
+    /**
+     * Set the number of files processed per second on a file store. Unlimited by default.
+     *
+     * @param maxOperationsPerSecond the number of files processed per second, 0 for no limit
+     */
+    public void setMaxOperationsPerSecond(long maxOperationsPerSecond) {
+        this.maxOperationsPerSecond = maxOperationsPerSecond;
+    }
+
+    /**
+     * @return the number of bytes copied or read per second on a file store, 0 if unlimited
+     */
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    /**
+     * Set the number of bytes copied or read per second on a file store. Unlimited by default.
+     *
+     * @param maxBytesPerSecond the number of bytes copied or read per second, 0 for no limit
+     */
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    /**
+     * @return a copy of these options, unaffected by later changes
+     */
+    IoOptions copy() {
+        IoOptions copy = new IoOptions();
+        copy.maxConcurrency = maxConcurrency;
+        copy.maxConcurrencyByType.putAll(maxConcurrencyByType);
+        copy.maxOperationsPerSecond = maxOperationsPerSecond;
+        copy.maxBytesPerSecond = maxBytesPerSecond;
+        return copy;
+    }
+}
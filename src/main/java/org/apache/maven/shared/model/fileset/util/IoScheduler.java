@@ -0,0 +1,408 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs file operations in parallel, limited per file store by {@link IoOptions}. The work of an operation is assigned
+ * to the file store of the directory it works in. Each file store has its own number of workers and optional rate
+ * limits, shared by all operations running on it at the same time. Only the file store of that directory is
+ * considered: the store of each item is not looked up, so items reached through symbolic links or mount points below
+ * the directory count against the store of the directory.
+ *
+ * <p>Scans list directories in parallel on a fork-join pool of the file store of their base directory, with as many
+ * workers as files may be processed at the same time on the store. The rate limits do not apply to scans.</p>
+ */
+final class IoScheduler {
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "fileset-io-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * An operation on a single item.
+     *
+     * @param <T> the type of the items
+     */
+    interface Operation<T> {
+        /**
+         * @param item the item to process
+         * @return the number of bytes copied or read, counted against the byte rate limit
+         * @throws IOException if the item cannot be processed
+         */
+        long run(T item) throws IOException;
+    }
+
+    private final IoOptions options;
+
+    private final ConcurrentMap<FileStore, Store> stores = new ConcurrentHashMap<>();
+
+    /**
+     * @param options the limits, copied
+     */
+    IoScheduler(IoOptions options) {
+        this.options = options.copy();
+    }
+
+    /**
+     * Run an operation on all items, in parallel within the limits of the file store of the given directory. The
+     * calling thread takes part in the work. After a failure no more items are started, and the first failure is
+     * rethrown once the running operations have finished.
+     *
+     * @param directory the directory the operation works in, which need not exist yet
+     * @param items the items to process
+     * @param operation the operation
+     * @param <T> the type of the items
+     * @throws IOException if an item cannot be processed, or the file store cannot be determined
+     */
+    <T> void run(Path directory, Collection<T> items, Operation<T> operation) throws IOException {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        Store store = store(directory);
+        Queue<T> queue = new ConcurrentLinkedQueue<>(items);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        int workers = Math.min(store.maxConcurrency, items.size());
+        List<Future<?>> futures = new ArrayList<>(workers - 1);
+        for (int i = 1; i < workers; i++) {
+            futures.add(WORKERS.submit(() -> work(store, queue, operation, failure)));
+        }
+        work(store, queue, operation, failure);
+
+        await(futures, failure);
+        rethrow(failure.get());
+    }
+
+    /**
+     * Start workers running an operation on the items submitted to the returned pipeline, within the limits of the
+     * file store of the given directory. Submitting blocks while the given number of items wait for a worker.
+     *
+     * @param directory the directory the operation works in
+     * @param capacity the number of items waiting for a worker
+     * @param operation the operation
+     * @param <T> the type of the items
+     * @return the pipeline to submit the items to, which must be finished or cancelled
+     * @throws IOException if the file store cannot be determined
+     */
+    <T> Pipeline<T> pipeline(Path directory, int capacity, Operation<T> operation) throws IOException {
+        return new Pipeline<>(store(directory), capacity, operation);
+    }
+
+    /**
+     * @param directory the base directory of a scan
+     * @return the pool to list the directories of the scan in parallel on, or <code>null</code> if the file store of
+     *         the directory is limited to one file at a time, so that the scan runs on the calling thread
+     * @throws IOException if the file store cannot be determined
+     */
+    ForkJoinPool scanPool(Path directory) throws IOException {
+        return store(directory).scanPool();
+    }
+
+    private static <T> void work(
+            Store store, Queue<T> queue, Operation<T> operation, AtomicReference<Throwable> failure) {
+        T item;
+        while (failure.get() == null && (item = queue.poll()) != null) {
+            execute(store, operation, item, failure);
+        }
+    }
+
+    private static <T> void execute(Store store, Operation<T> operation, T item, AtomicReference<Throwable> failure) {
+        try {
+            store.acquire();
+            try {
+                store.transferred(operation.run(item));
+            } finally {
+                store.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new InterruptedIOException("Interrupted while waiting for the file store"));
+        } catch (IOException | RuntimeException | Error e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private static void await(List<Future<?>> futures, AtomicReference<Throwable> failure) {
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    failure.compareAndSet(null, new InterruptedIOException("Interrupted while waiting for workers"));
+                } catch (ExecutionException e) {
+                    failure.compareAndSet(null, e.getCause());
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void rethrow(Throwable cause) throws IOException {
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+    }
+
+    private Store store(Path directory) throws IOException {
+        FileStore fileStore = null;
+        for (Path path = directory.toAbsolutePath(); fileStore == null; path = path.getParent()) {
+            try {
+                fileStore = Files.getFileStore(path);
+            } catch (NoSuchFileException e) {
+                if (path.getParent() == null) {
+                    throw e;
+                }
+            }
+        }
+        return stores.computeIfAbsent(fileStore, key -> new Store(options, key.type()));
+    }
+
+    /**
+     * Items flowing from a producer to the workers of a file store through a bounded queue.
+     *
+     * @param <T> the type of the items
+     */
+    static final class Pipeline<T> {
+        private static final Object END = new Object();
+
+        private final BlockingQueue<Object> queue;
+
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private final List<Future<?>> workers = new ArrayList<>();
+
+        Pipeline(Store store, int capacity, Operation<T> operation) {
+            queue = new ArrayBlockingQueue<>(capacity);
+            for (int i = 0; i < store.maxConcurrency; i++) {
+                workers.add(WORKERS.submit(() -> work(store, operation)));
+            }
+        }
+
+        /**
+         * Hand an item to the workers, waiting while the queue is full.
+         *
+         * @param item the item
+         * @throws IOException if an item failed, after which no more items are run
+         */
+        void submit(T item) throws IOException {
+            rethrow(failure.get());
+            try {
+                queue.put(item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the workers");
+            }
+        }
+
+        /**
+         * Wait for the workers to run all submitted items.
+         *
+         * @throws IOException the first failure of an item
+         */
+        void finish() throws IOException {
+            end();
+            rethrow(failure.get());
+        }
+
+        /**
+         * Skip the submitted items not yet started, and wait for the running ones.
+         */
+        void cancel() {
+            failure.compareAndSet(null, new CancellationException());
+            end();
+        }
+
+        private void end() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(END);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            await(workers, failure);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void work(Store store, Operation<T> operation) {
+            while (true) {
+                Object item;
+                try {
+                    item = queue.take();
+                } catch (InterruptedException e) {
+                    failure.compareAndSet(null, new InterruptedIOException("Interrupted while waiting for items"));
+                    return;
+                }
+                if (item == END) {
+                    // for the other workers, there is room as one item has just been taken
+                    queue.offer(END);
+                    return;
+                }
+                if (failure.get() == null) {
+                    execute(store, operation, (T) item, failure);
+                }
+            }
+        }
+    }
+
+    /**
+     * The limits of a file store, and their state.
+     */
+    private static final class Store {
+        final int maxConcurrency;
+
+        private volatile ForkJoinPool scanPool;
+
+        private final Semaphore permits;
+
+        private final long nanosPerOperation;
+
+        private final double nanosPerByte;
+
+        /**
+         * The earliest time the next operation may start, as of the operation rate limit.
+         */
+        private long nextOperation = System.nanoTime();
+
+        /**
+         * The earliest time the next operation may start, as of the bytes transferred so far.
+         */
+        private long nextByte = System.nanoTime();
+
+        Store(IoOptions options, String type) {
+            maxConcurrency = Math.max(1, options.getMaxConcurrency(type));
+            permits = new Semaphore(maxConcurrency, true);
+            nanosPerOperation = options.getMaxOperationsPerSecond() > 0
+                    ? TimeUnit.SECONDS.toNanos(1) / options.getMaxOperationsPerSecond()
+                    : 0;
+            nanosPerByte = options.getMaxBytesPerSecond() > 0 ? 1e9 / options.getMaxBytesPerSecond() : 0;
+        }
+
+        ForkJoinPool scanPool() {
+            if (maxConcurrency == 1) {
+                return null;
+            }
+            ForkJoinPool pool = scanPool;
+            if (pool == null) {
+                synchronized (this) {
+                    pool = scanPool;
+                    if (pool == null) {
+                        // idle workers of the pool terminate, so that an unused pool holds no threads
+                        pool = new ForkJoinPool(maxConcurrency);
+                        scanPool = pool;
+                    }
+                }
+            }
+            return pool;
+        }
+
+        void acquire() throws InterruptedException {
+            permits.acquire();
+            try {
+                long delay = reserve();
+                if (delay > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                }
+            } catch (InterruptedException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        void release() {
+            permits.release();
+        }
+
+        /**
+         * @return the nanoseconds to wait before the next operation may start
+         */
+        private synchronized long reserve() {
+            if (nanosPerOperation == 0 && nanosPerByte == 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            long start = now;
+            if (nextOperation - start > 0) {
+                start = nextOperation;
+            }
+            if (nextByte - start > 0) {
+                start = nextByte;
+            }
+            nextOperation = start + nanosPerOperation;
+            return start - now;
+        }
+
+        synchronized void transferred(long bytes) {
+            if (nanosPerByte > 0 && bytes > 0) {
+                long now = System.nanoTime();
+                if (nextByte - now < 0) {
+                    nextByte = now;
+                }
+                nextByte += (long) (bytes * nanosPerByte);
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of relative paths stored compactly as front-coded UTF-8: each path only stores the bytes following
+ * the prefix it shares with the previous path, so the directory prefixes repeated by the entries of a directory are
+ * stored once. Every {@value #RESTART_INTERVAL}th path is stored in full, so that {@link #get(int)} decodes at most
+ * that many paths, while iterating decodes each path once.
+ *
+ * <p>The strings are decoded on access; callers holding on to the returned strings keep their memory alive.</p>
+ *
+ * @see FileSetManager#getIncludedFileList(org.apache.maven.shared.model.fileset.FileSet)
+ */
+public final class PathList extends AbstractList<String> implements RandomAccess {
+    private static final int RESTART_INTERVAL = 16;
+
+    private static final PathList EMPTY = new Builder().build();
+
+    private final byte[] data;
+
+    /**
+     * The offsets of the paths stored in full, one per {@value #RESTART_INTERVAL} paths.
+     */
+    private final int[] restarts;
+
+    private final int size;
+
+    private PathList(byte[] data, int[] restarts, int size) {
+        this.data = data;
+        this.restarts = restarts;
+        this.size = size;
+    }
+
+    /**
+     * @return an empty list
+     */
+    public static PathList empty() {
+        return EMPTY;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        Cursor cursor = new Cursor(restarts[index / RESTART_INTERVAL]);
+        for (int i = index % RESTART_INTERVAL; i > 0; i--) {
+            cursor.next();
+        }
+        return cursor.next();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private final Cursor cursor = new Cursor(0);
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public String next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                index++;
+                return cursor.next();
+            }
+        };
+    }
+
+    /**
+     * @param basedir the directory the paths are relative to
+     * @return the paths resolved against the given directory, resolved lazily while iterating
+     */
+    public Iterable<Path> paths(Path basedir) {
+        return () -> {
+            Iterator<String> names = iterator();
+            return new Iterator<Path>() {
+                @Override
+                public boolean hasNext() {
+                    return names.hasNext();
+                }
+
+                @Override
+                public Path next() {
+                    return basedir.resolve(names.next());
+                }
+            };
+        };
+    }
+
+    /**
+     * @return the number of bytes used to store the encoded paths and their restart offsets
+     */
+    public long getEncodedSize() {
+        return data.length + 4L * restarts.length;
+    }
+
+    /**
+     * Decodes the paths following an offset where a full path is stored.
+     */
+    private final class Cursor {
+        private int offset;
+
+        private byte[] current = new byte[64];
+
+        private int length;
+
+        Cursor(int offset) {
+            this.offset = offset;
+        }
+
+        String next() {
+            int shared = readVarInt();
+            int suffix = readVarInt();
+            length = shared + suffix;
+            if (length > current.length) {
+                current = Arrays.copyOf(current, Math.max(length, 2 * current.length));
+            }
+            System.arraycopy(data, offset, current, shared, suffix);
+            offset += suffix;
+            return new String(current, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[offset++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a path list by appending paths. Not thread-safe.
+     */
+    public static final class Builder {
+        private byte[] data = new byte[1024];
+
+        private int dataLength;
+
+        private int[] restarts = new int[16];
+
+        private int size;
+
+        private byte[] previous = new byte[0];
+
+        /**
+         * @param path the path to append
+         * @return this builder
+         */
+        public Builder add(String path) {
+            byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+
+            int shared = 0;
+            if (size % RESTART_INTERVAL == 0) {
+                int restart = size / RESTART_INTERVAL;
+                if (restart == restarts.length) {
+                    restarts = Arrays.copyOf(restarts, 2 * restarts.length);
+                }
+                restarts[restart] = dataLength;
+            } else {
+                int max = Math.min(bytes.length, previous.length);
+                while (shared < max && bytes[shared] == previous[shared]) {
+                    shared++;
+                }
+            }
+
+            ensureCapacity(10 + bytes.length - shared);
+            writeVarInt(shared);
+            writeVarInt(bytes.length - shared);
+            System.arraycopy(bytes, shared, data, dataLength, bytes.length - shared);
+            dataLength += bytes.length - shared;
+
+            previous = bytes;
+            size++;
+            return this;
+        }
+
+        /**
+         * @return the list of the appended paths
+         */
+        public PathList build() {
+            int restartCount = (size + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+            return new PathList(Arrays.copyOf(data, dataLength), Arrays.copyOf(restarts, restartCount), size);
+        }
+
+        private void ensureCapacity(int additional) {
+            if (dataLength + additional > data.length) {
+                data = Arrays.copyOf(data, Math.max(dataLength + additional, 2 * data.length));
+            }
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                data[dataLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[dataLength++] = (byte) value;
+        }
+    }
+}
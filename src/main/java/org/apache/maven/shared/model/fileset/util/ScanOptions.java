@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+/**
+ * Limits of a scan of a file-set, to avoid walking the whole tree when only part of the result is needed.
+ *
+ * @see FileSetManager#getIncludedFiles(org.apache.maven.shared.model.fileset.FileSet, ScanOptions)
+ */
+public class ScanOptions {
+    private int maxDepth = Integer.MAX_VALUE;
+
+    private int maxResults = Integer.MAX_VALUE;
+
+    /**
+     * @return the depth of the deepest entries to scan
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Set the depth of the deepest entries to scan. The entries of the base directory have depth 1, so a depth of 2
+     * limits the scan to the top two levels. Unlimited by default.
+     *
+     * @param maxDepth the depth of the deepest entries to scan
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @return the number of included files and directories after which the scan stops
+     */
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    /**
+     * Set the number of included files and directories after which the scan stops, not counting the base directory
+     * itself. Unlimited by default.
+     *
+     * @param maxResults the number of included files and directories after which the scan stops
+     */
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+}
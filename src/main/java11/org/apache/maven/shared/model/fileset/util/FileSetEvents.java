@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.nio.file.Path;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.apache.maven.shared.model.fileset.FileSet;
+
+/**
+ * Emits Java Flight Recorder events for the work of a {@link FileSetManager}. The events are only allocated and
+ * filled when they are enabled in a running recording.
+ *
+ * <p>The <code>begin</code> methods return <code>null</code> when the event is not recorded. The returned object is
+ * only meant to be passed to the matching <code>end</code> method.</p>
+ */
+final class FileSetEvents {
+    private static final EventType SCAN_TYPE = EventType.getEventType(ScanEvent.class);
+
+    private static final EventType DELETE_TYPE = EventType.getEventType(DeleteEvent.class);
+
+    private static final EventType MAPPING_TYPE = EventType.getEventType(MappingEvent.class);
+
+    private FileSetEvents() {
+        // no op
+    }
+
+    static Object beginScan() {
+        if (!SCAN_TYPE.isEnabled()) {
+            return null;
+        }
+        ScanEvent event = new ScanEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endScan(
+            Object event,
+            FileSet fileSet,
+            Path basedir,
+            int visitedDirectories,
+            int includedEntries,
+            int excludedEntries) {
+        if (event == null) {
+            return;
+        }
+        ScanEvent scan = (ScanEvent) event;
+        scan.end();
+        if (scan.shouldCommit()) {
+            scan.directory = basedir.toString();
+            scan.includes = fileSet.getIncludes().size();
+            scan.excludes = fileSet.getExcludes().size();
+            scan.visitedDirectories = visitedDirectories;
+            scan.includedEntries = includedEntries;
+            scan.excludedEntries = excludedEntries;
+            scan.commit();
+        }
+    }
+
+    static Object beginDelete() {
+        if (!DELETE_TYPE.isEnabled()) {
+            return null;
+        }
+        DeleteEvent event = new DeleteEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endDelete(Object event, Path basedir, int deletablePaths) {
+        if (event == null) {
+            return;
+        }
+        DeleteEvent delete = (DeleteEvent) event;
+        delete.end();
+        if (delete.shouldCommit()) {
+            delete.directory = basedir.toString();
+            delete.deletablePaths = deletablePaths;
+            delete.commit();
+        }
+    }
+
+    static Object beginMapping() {
+        if (!MAPPING_TYPE.isEnabled()) {
+            return null;
+        }
+        MappingEvent event = new MappingEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endMapping(Object event, FileSet fileSet, Path basedir, int mappedFiles) {
+        if (event == null) {
+            return;
+        }
+        MappingEvent mapping = (MappingEvent) event;
+        mapping.end();
+        if (mapping.shouldCommit()) {
+            mapping.directory = basedir.toString();
+            mapping.mapper = fileSet.getMapper() != null ? fileSet.getMapper().getType() : null;
+            mapping.mappedFiles = mappedFiles;
+            mapping.commit();
+        }
+    }
+
+    @Name("org.apache.maven.fileset.Scan")
+    @Label("FileSet Scan")
+    @Category({"Maven", "FileSet"})
+    @Description("Scan of the base directory of a file-set")
+    @StackTrace(false)
+    static final class ScanEvent extends Event {
+        @Label("Directory")
+        String directory;
+
+        @Label("Include Patterns")
+        int includes;
+
+        @Label("Exclude Patterns")
+        int excludes;
+
+        @Label("Visited Directories")
+        int visitedDirectories;
+
+        @Label("Included Entries")
+        int includedEntries;
+
+        @Label("Excluded Entries")
+        int excludedEntries;
+    }
+
+    @Name("org.apache.maven.fileset.Delete")
+    @Label("FileSet Delete")
+    @Category({"Maven", "FileSet"})
+    @Description("Deletion of the deletable entries of a file-set")
+    @StackTrace(false)
+    static final class DeleteEvent extends Event {
+        @Label("Directory")
+        String directory;
+
+        @Label("Deletable Paths")
+        int deletablePaths;
+    }
+
+    @Name("org.apache.maven.fileset.Mapping")
+    @Label("FileSet Mapping")
+    @Category({"Maven", "FileSet"})
+    @Description("Mapping of the included files of a file-set to their destination names")
+    @StackTrace(false)
+    static final class MappingEvent extends Event {
+        @Label("Directory")
+        String directory;
+
+        @Label("Mapper")
+        String mapper;
+
+        @Label("Mapped Files")
+        int mappedFiles;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+
+/**
+ * Access to file store properties which are not available on Java 8.
+ */
+final class FileStores {
+    /**
+     * The block size assumed when the file store does not tell.
+     */
+    static final long DEFAULT_BLOCK_SIZE = 4096;
+
+    private FileStores() {
+        // no op
+    }
+
+    /**
+     * @param store the file store
+     * @return the size of the allocation blocks of the file store, or {@link #DEFAULT_BLOCK_SIZE} if unknown
+     */
+    static long getBlockSize(FileStore store) {
+        try {
+            long blockSize = store.getBlockSize();
+            return blockSize > 0 ? blockSize : DEFAULT_BLOCK_SIZE;
+        } catch (IOException | UnsupportedOperationException e) {
+            return DEFAULT_BLOCK_SIZE;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Test the FileHasher
+ */
+class FileHasherTest {
+    @TempDir
+    File testDirectory;
+
+    @Test
+    void digest() throws Exception {
+        byte[] content = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        Path file = new File(testDirectory, "large.bin").toPath();
+        Files.write(file, content);
+
+        byte[] digest = new FileHasher().digest(file, attributes(file), "SHA-256");
+
+        assertArrayEquals(FileHasher.newDigest("SHA-256").digest(content), digest);
+    }
+
+    @Test
+    void memoizedDigestsAreBounded() throws Exception {
+        FileHasher hasher = new FileHasher(2);
+        for (int i = 0; i < 5; i++) {
+            Path file = new File(testDirectory, "file" + i).toPath();
+            Files.write(file, new byte[] {(byte) i});
+            hasher.digest(file, attributes(file), "SHA-256");
+        }
+        assertEquals(2, hasher.size());
+
+        // a changed file replaces its previous digest
+        Path file = new File(testDirectory, "file4").toPath();
+        Files.write(file, new byte[] {1, 2});
+        hasher.digest(file, attributes(file), "SHA-256");
+        assertEquals(2, hasher.size());
+    }
+
+    @Test
+    void changesWithinAMillisecondAreNoticed() throws Exception {
+        FileHasher hasher = new FileHasher();
+        Path file = new File(testDirectory, "file").toPath();
+        FileTime time = FileTime.from(Instant.parse("2024-01-01T00:00:00.000100Z"));
+        Files.write(file, "old".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, time);
+        byte[] oldDigest = hasher.digest(file, attributes(file), "SHA-256");
+
+        // same size, modified within the same millisecond
+        Files.write(file, "new".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2024-01-01T00:00:00.000200Z")));
+        assumeFalse(attributes(file).lastModifiedTime().equals(time), "no sub-millisecond timestamps");
+        assertArrayEquals(sha256("new"), hasher.digest(file, attributes(file), "SHA-256"));
+        assertFalse(Arrays.equals(oldDigest, sha256("new")));
+
+        // replaced by another file of the same size and modification time
+        Path other = new File(testDirectory, "other").toPath();
+        Files.write(other, "bar".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(other, attributes(file).lastModifiedTime());
+        assumeTrue(attributes(file).fileKey() != null, "no file keys");
+        Files.move(other, file, StandardCopyOption.REPLACE_EXISTING);
+        assertArrayEquals(sha256("bar"), hasher.digest(file, attributes(file), "SHA-256"));
+    }
+
+    private static byte[] sha256(String content) {
+        return FileHasher.newDigest("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static BasicFileAttributes attributes(Path file) throws Exception {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.shared.model.fileset.FileSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test the FileSetArchiver
+ */
+class FileSetArchiverTest {
+    @TempDir
+    File testDirectory;
+
+    @Test
+    void createArchive() throws Exception {
+        File directory = new File(testDirectory, "source");
+        write(new File(directory, "b/text.txt"), "some text some text some text some text");
+        write(new File(directory, "a/image.png"), "not really an image");
+        write(new File(directory, "a/skipped.log"), "log");
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.setOutputDirectory("prefix");
+        set.addExclude("**/*.log");
+        set.setFileMode("0640");
+
+        FileSetArchiver archiver = new FileSetArchiver();
+        archiver.addFileSet(set);
+        archiver.setSpillThreshold(8);
+        archiver.setLastModifiedTime(FileTime.fromMillis(1700000000000L));
+
+        File archive = new File(testDirectory, "archive.zip");
+        archiver.createArchive(archive.toPath());
+
+        try (ZipFile zip = new ZipFile(archive)) {
+            List<String> names = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                names.add(entry.getName());
+            }
+            assertEquals(
+                    Arrays.asList("prefix/", "prefix/a/", "prefix/a/image.png", "prefix/b/", "prefix/b/text.txt"),
+                    names);
+
+            ZipEntry text = zip.getEntry("prefix/b/text.txt");
+            assertEquals(ZipEntry.DEFLATED, text.getMethod());
+            try (InputStream in = zip.getInputStream(text)) {
+                assertEquals("some text some text some text some text", IOUtils.toString(in, StandardCharsets.UTF_8));
+            }
+
+            assertEquals(ZipEntry.STORED, zip.getEntry("prefix/a/image.png").getMethod());
+        }
+
+        Map<String, Integer> modes = readUnixModes(Files.readAllBytes(archive.toPath()));
+        assertEquals(Integer.valueOf(0100640), modes.get("prefix/b/text.txt"));
+        assertEquals(Integer.valueOf(040755), modes.get("prefix/a/"));
+
+        File again = new File(testDirectory, "again.zip");
+        archiver.createArchive(again.toPath());
+        assertArrayEquals(Files.readAllBytes(archive.toPath()), Files.readAllBytes(again.toPath()));
+    }
+
+    @Test
+    void createArchiveIsReproducible() throws Exception {
+        File directory = new File(testDirectory, "source");
+        write(new File(directory, "a/b/text.txt"), "some text");
+        Files.setLastModifiedTime(new File(directory, "a/b/text.txt").toPath(), FileTime.fromMillis(1700000000000L));
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.setOutputDirectory("prefix");
+        FileSetArchiver archiver = new FileSetArchiver();
+        archiver.addFileSet(set);
+
+        File archive = new File(testDirectory, "archive.zip");
+        archiver.createArchive(archive.toPath());
+        // past the two second resolution of the ZIP format, in another time zone
+        Thread.sleep(2100);
+        TimeZone timeZone = TimeZone.getDefault();
+        File again = new File(testDirectory, "again.zip");
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone(timeZone.getRawOffset() == 0 ? "Asia/Tokyo" : "UTC"));
+            archiver.createArchive(again.toPath());
+        } finally {
+            TimeZone.setDefault(timeZone);
+        }
+        assertArrayEquals(Files.readAllBytes(archive.toPath()), Files.readAllBytes(again.toPath()));
+
+        Map<String, Integer> times = readDosTimes(Files.readAllBytes(archive.toPath()));
+        assertEquals(Integer.valueOf(1 << 21 | 1 << 16), times.get("prefix/a/"));
+        // 2023-11-14T22:13:20Z
+        assertEquals(
+                Integer.valueOf(43 << 25 | 11 << 21 | 14 << 16 | 22 << 11 | 13 << 5 | 10),
+                times.get("prefix/a/b/text.txt"));
+    }
+
+    private static Map<String, Integer> readUnixModes(byte[] archive) {
+        return readCentralDirectory(archive, 38, 16);
+    }
+
+    private static Map<String, Integer> readDosTimes(byte[] archive) {
+        return readCentralDirectory(archive, 12, 0);
+    }
+
+    /**
+     * Read an int field of each central directory header.
+     */
+    private static Map<String, Integer> readCentralDirectory(byte[] archive, int fieldOffset, int shift) {
+        ByteBuffer buffer = ByteBuffer.wrap(archive).order(ByteOrder.LITTLE_ENDIAN);
+        int endOfCentralDirectory = archive.length - 22;
+        int entries = buffer.getShort(endOfCentralDirectory + 10) & 0xFFFF;
+        int offset = buffer.getInt(endOfCentralDirectory + 16);
+
+        Map<String, Integer> fields = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            int nameLength = buffer.getShort(offset + 28) & 0xFFFF;
+            int extraLength = buffer.getShort(offset + 30) & 0xFFFF;
+            int commentLength = buffer.getShort(offset + 32) & 0xFFFF;
+            int field = buffer.getInt(offset + fieldOffset);
+            String name = new String(archive, offset + 46, nameLength, StandardCharsets.UTF_8);
+            fields.put(name, field >>> shift);
+            offset += 46 + nameLength + extraLength + commentLength;
+        }
+        return fields;
+    }
+
+    private static void write(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -22,15 +22,45 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.shared.model.fileset.FileSet;
+import org.codehaus.plexus.util.DirectoryScanner;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assumptions.assumeTrue;
@@ -249,6 +279,1120 @@ class FileSetUtilsTest {
         assertFalse(new File(directory, "dir1").exists(), "included directory has not been deleted");
     }
 
+    @Test
+    void deleteStreaming() throws Exception {
+        File streamed = new File(testDirectory, "streamed");
+        File collected = new File(testDirectory, "collected");
+        File target = new File(testDirectory, "target");
+        write(new File(target, "kept.txt"), "kept");
+
+        for (File directory : Arrays.asList(streamed, collected)) {
+            for (int d = 0; d < 30; d++) {
+                for (int i = 0; i < 100; i++) {
+                    write(new File(directory, "dir" + d + "/sub/file" + i + ".txt"), "content");
+                }
+            }
+            write(new File(directory, "dir3/sub/keep.log"), "excluded");
+            write(new File(directory, "dir4/keep.log"), "excluded");
+            write(new File(directory, "top.txt"), "content");
+            createSymlink(target, new File(directory, "dir5/dirlink"));
+            createSymlink(new File(target, "kept.txt"), new File(directory, "filelink"));
+        }
+
+        FileSetManager fileSetManager = new FileSetManager();
+        fileSetManager.deleteStreaming(fileSet(streamed), true);
+        fileSetManager.delete(fileSet(collected), true);
+
+        assertEquals(
+                Arrays.asList("", "dir3", "dir3/sub", "dir3/sub/keep.log", "dir4", "dir4/keep.log"),
+                listTree(streamed.toPath()));
+        assertEquals(listTree(collected.toPath()), listTree(streamed.toPath()));
+        assertTrue(new File(target, "kept.txt").exists(), "target of link has been deleted");
+
+        FileSet all = new FileSet();
+        all.setDirectory(streamed.getPath());
+        fileSetManager.deleteStreaming(all, true);
+        assertFalse(streamed.exists(), "base directory has not been deleted");
+    }
+
+    @Test
+    void deleteReadsAttributesOnce() throws Exception {
+        File directory = new File(testDirectory, "tree");
+        for (int d = 0; d < 10; d++) {
+            for (int i = 0; i < 10; i++) {
+                write(new File(directory, "dir" + d + "/file" + i + ".txt"), "content");
+            }
+            write(new File(directory, "dir" + d + "/kept.log"), "excluded");
+            write(new File(directory, "all/file" + d + ".txt"), "content");
+        }
+        int entries = 1 + 11 + 10 * 11 + 10;
+
+        CountingFileSystemProvider fileSystem = new CountingFileSystemProvider(FileSystems.getDefault());
+        FileSet set = new FileSet();
+        set.addExclude("**/*.log");
+
+        new FileSetManager().delete(fileSystem.wrap(directory.toPath()), set, true);
+
+        assertFalse(new File(directory, "all").exists(), "included directory has not been deleted");
+        assertFalse(new File(directory, "dir0/file0.txt").exists(), "included file has not been deleted");
+        assertTrue(new File(directory, "dir0/kept.log").exists(), "excluded file has been deleted");
+        assertTrue(
+                fileSystem.getAttributeReads() <= entries,
+                "attributes read " + fileSystem.getAttributeReads() + " times for " + entries + " entries");
+    }
+
+    @Test
+    void fingerprint() throws Exception {
+        File directory = setupTestDirectory("testGetIncludedFiles");
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.addInclude("**/*.txt");
+
+        FileSetManager fileSetManager = new FileSetManager();
+
+        FileSetFingerprint first = fileSetManager.fingerprint(set, "SHA-256");
+
+        assertEquals(3, first.getFileDigests().size());
+        assertEquals("otherStuff/excluded.txt", first.getFileDigests().firstKey());
+        first.getFileDigests().get("otherStuff/excluded.txt")[0]++;
+        assertEquals(
+                first.getDigestAsHex(), new FileSetFingerprint("SHA-256", first.getFileDigests()).getDigestAsHex());
+        assertEquals(first, new FileSetManager().fingerprint(set, "SHA-256"));
+
+        File file = new File(directory, "stuff/included.txt");
+        Files.write(file.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+
+        assertNotEquals(first, fileSetManager.fingerprint(set, "SHA-256"));
+    }
+
+    @Test
+    void fingerprintReusesDigestOfUnchangedFile() throws Exception {
+        File directory = setupTestDirectory("testGetIncludedFiles");
+        File file = new File(directory, "stuff/included.txt");
+        Files.write(file.toPath(), "aaaa".getBytes(StandardCharsets.UTF_8));
+        FileTime lastModified = Files.getLastModifiedTime(file.toPath());
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.addInclude("**/included.txt");
+
+        FileSetManager fileSetManager = new FileSetManager();
+
+        FileSetFingerprint first = fileSetManager.fingerprint(set, "SHA-256");
+
+        // same size and modification time: the memoized digest is used
+        Files.write(file.toPath(), "bbbb".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file.toPath(), lastModified);
+
+        assertEquals(first, fileSetManager.fingerprint(set, "SHA-256"));
+        assertNotEquals(first, new FileSetManager().fingerprint(set, "SHA-256"));
+    }
+
+    @Test
+    void sync() throws Exception {
+        File directory = setupTestDirectory("testGetIncludedFiles");
+        File outputDirectory = new File(testDirectory, "sync-output");
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.setOutputDirectory(outputDirectory.getPath());
+        set.addInclude("**/*.txt");
+        set.addExclude("otherStuff/**");
+
+        FileSetManager fileSetManager = new FileSetManager();
+
+        FileSetSyncResult result = fileSetManager.sync(set);
+
+        assertEquals(2, result.getCopiedFiles().size());
+        assertTrue(new File(outputDirectory, "stuff/included.txt").exists());
+
+        File orphanFile = new File(outputDirectory, "stuff/orphan.txt");
+        File orphanDirectory = new File(outputDirectory, "otherStuff");
+        assertTrue(orphanDirectory.mkdirs());
+        Files.write(orphanFile.toPath(), "orphan".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(orphanDirectory, "excluded.txt").toPath(), "orphan".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(directory, "stuff/included.txt").toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+
+        result = fileSetManager.sync(set);
+
+        assertEquals(Collections.singletonList("stuff" + File.separator + "included.txt"), result.getCopiedFiles());
+        assertEquals(1, result.getUnchangedFiles());
+        assertEquals(2, result.getDeletedPaths().size());
+        assertFalse(orphanFile.exists(), "orphaned file still exists");
+        assertFalse(orphanDirectory.exists(), "orphaned directory still exists");
+
+        result = fileSetManager.sync(set, true);
+
+        assertTrue(result.getCopiedFiles().isEmpty());
+        assertEquals(2, result.getUnchangedFiles());
+    }
+
+    @Test
+    void copyWithLinks() throws Exception {
+        File directory = setupTestDirectory("testGetIncludedFiles");
+        File outputDirectory = new File(testDirectory, "copy-output");
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.setOutputDirectory(outputDirectory.getPath());
+        set.addInclude("**/included.txt");
+
+        FileSetManager fileSetManager = new FileSetManager();
+
+        fileSetManager.copy(set, CopyMode.HARD_LINK);
+
+        File source = new File(directory, "stuff/included.txt");
+        File target = new File(outputDirectory, "stuff/included.txt");
+        assertTrue(Files.isSameFile(source.toPath(), target.toPath()), "hard link not created");
+
+        try {
+            fileSetManager.copy(set, CopyMode.SYMBOLIC_LINK);
+        } catch (UnsupportedOperationException e) {
+            assumeTrue(false);
+        }
+
+        assertTrue(Files.isSymbolicLink(target.toPath()), "symbolic link not created");
+        assertFalse(Files.readSymbolicLink(target.toPath()).isAbsolute(), "symbolic link is not relative");
+        assertTrue(Files.isSameFile(source.toPath(), target.toPath()), "symbolic link points elsewhere");
+    }
+
+    @Test
+    void listener() throws Exception {
+        File directory = setupTestDirectory("testDelete");
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.addInclude("**/included.txt");
+
+        List<String> visited = new ArrayList<>();
+        Map<FileSetListener.Phase, Long> phases = new EnumMap<>(FileSetListener.Phase.class);
+        AtomicLong bytesDeleted = new AtomicLong();
+        Set<Thread> deletingThreads = Collections.synchronizedSet(new HashSet<>());
+        AtomicInteger included = new AtomicInteger();
+
+        FileSetManager fileSetManager = new FileSetManager();
+        fileSetManager.setListener(new FileSetListener() {
+            @Override
+            public void directoryVisited(FileSet fileSet, String relativePath) {
+                visited.add(relativePath);
+            }
+
+            @Override
+            public void scanFinished(
+                    FileSet fileSet,
+                    int visitedDirectories,
+                    int includedEntries,
+                    int excludedEntries,
+                    int prunedDirectories) {
+                included.set(includedEntries);
+            }
+
+            @Override
+            public void phaseFinished(FileSet fileSet, Phase phase, long nanos) {
+                phases.put(phase, nanos);
+            }
+
+            @Override
+            public void bytesDeleted(FileSet fileSet, long bytes) {
+                bytesDeleted.addAndGet(bytes);
+                deletingThreads.add(Thread.currentThread());
+            }
+        });
+
+        long expectedBytes =
+                new File(directory, "included.txt").length() + new File(directory, "subdir/included.txt").length();
+
+        fileSetManager.delete(set);
+
+        assertTrue(visited.contains(""), "base directory not visited");
+        assertTrue(visited.contains("subdir"), "subdirectory not visited");
+        assertEquals(2, included.get());
+        assertTrue(phases.containsKey(FileSetListener.Phase.SCAN), "scan not timed");
+        assertTrue(phases.containsKey(FileSetListener.Phase.DELETE), "delete not timed");
+        assertEquals(expectedBytes, bytesDeleted.get());
+        // without I/O options, files are deleted by the calling thread
+        assertEquals(Collections.singleton(Thread.currentThread()), deletingThreads);
+    }
+
+    @Test
+    void stats() throws Exception {
+        File directory = new File(testDirectory, "stats");
+        write(new File(directory, "top.txt"), "12345");
+        write(new File(directory, "a/one.txt"), "1234567890");
+        write(new File(directory, "a/b/two.txt"), "123");
+        write(new File(directory, "c/skipped.log"), "skipped");
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.addInclude("**/*.txt");
+
+        FileSetStats stats = new FileSetManager().stats(set, true);
+
+        assertEquals(3, stats.getFileCount());
+        assertEquals(0, stats.getDirectoryCount());
+        assertEquals(18, stats.getTotalBytes());
+        assertTrue(stats.getAllocatedBytes() >= stats.getTotalBytes());
+        assertEquals(
+                Arrays.asList("", "a"),
+                new ArrayList<>(stats.getTopLevelDirectories().keySet()));
+        assertEquals(1, stats.getTopLevelDirectories().get("").getFileCount());
+        assertEquals(5, stats.getTopLevelDirectories().get("").getTotalBytes());
+        assertEquals(2, stats.getTopLevelDirectories().get("a").getFileCount());
+        assertEquals(13, stats.getTopLevelDirectories().get("a").getTotalBytes());
+        assertBreakdownAddsUp(stats);
+
+        set.getIncludes().clear();
+        stats = new FileSetManager().stats(set, false);
+
+        assertEquals(4, stats.getFileCount());
+        assertEquals(4, stats.getDirectoryCount());
+        assertEquals(25, stats.getTotalBytes());
+        assertTrue(stats.getTopLevelDirectories().isEmpty());
+
+        // the base directory is accounted along with the files directly in it
+        stats = new FileSetManager().stats(set, true);
+        assertEquals(1, stats.getTopLevelDirectories().get("").getDirectoryCount());
+        assertEquals(2, stats.getTopLevelDirectories().get("a").getDirectoryCount());
+        assertBreakdownAddsUp(stats);
+
+        // a followed symbolic link counts with the size of its target, otherwise with its own size
+        File link = new File(directory, "link.txt");
+        createSymlink(new File(directory, "a/one.txt").getAbsoluteFile(), link);
+        long linkSize = Files.readAttributes(link.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+                .size();
+        set.addInclude("link.txt");
+        assertEquals(linkSize, new FileSetManager().stats(set).getTotalBytes());
+        set.setFollowSymlinks(true);
+        assertEquals(10, new FileSetManager().stats(set).getTotalBytes());
+    }
+
+    private static void assertBreakdownAddsUp(FileSetStats stats) {
+        long files = 0;
+        long directories = 0;
+        long bytes = 0;
+        long allocatedBytes = 0;
+        for (FileSetStats topLevel : stats.getTopLevelDirectories().values()) {
+            files += topLevel.getFileCount();
+            directories += topLevel.getDirectoryCount();
+            bytes += topLevel.getTotalBytes();
+            allocatedBytes += topLevel.getAllocatedBytes();
+        }
+        assertEquals(stats.getFileCount(), files);
+        assertEquals(stats.getDirectoryCount(), directories);
+        assertEquals(stats.getTotalBytes(), bytes);
+        assertEquals(stats.getAllocatedBytes(), allocatedBytes);
+    }
+
+    @Test
+    void selectors() throws Exception {
+        File directory = new File(testDirectory, "selectors");
+        write(new File(directory, "old/old.txt"), "old");
+        write(new File(directory, "mixed/old.txt"), "old");
+        write(new File(directory, "mixed/new.txt"), "new");
+        write(new File(directory, "big.txt"), "1234567890");
+        FileTime tenDaysAgo = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(10));
+        Files.setLastModifiedTime(new File(directory, "old/old.txt").toPath(), tenDaysAgo);
+        Files.setLastModifiedTime(new File(directory, "mixed/old.txt").toPath(), tenDaysAgo);
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.setMinSize("5");
+
+        FileSetManager fileSetManager = new FileSetManager();
+        assertArrayEquals(new String[] {"big.txt"}, fileSetManager.getIncludedFiles(set));
+
+        set.setMinSize(null);
+        set.setType("directory");
+        String[] directories = fileSetManager.getIncludedDirectories(set);
+        Arrays.sort(directories);
+        assertArrayEquals(new String[] {"", "mixed", "old"}, directories);
+        assertEquals(0, fileSetManager.getIncludedFiles(set).length);
+
+        set.setType(null);
+        set.setModifiedBefore("P7D");
+        fileSetManager.delete(set);
+
+        assertFalse(new File(directory, "old").exists(), "directory of old files not deleted");
+        assertFalse(new File(directory, "mixed/old.txt").exists(), "old file not deleted");
+        assertTrue(new File(directory, "mixed/new.txt").exists(), "new file deleted");
+        assertTrue(new File(directory, "big.txt").exists(), "new file deleted");
+
+        set.setMaxSize("1x");
+        assertThrows(IllegalArgumentException.class, () -> fileSetManager.getIncludedFiles(set));
+    }
+
+    @Test
+    void scanLimits() throws Exception {
+        File directory = new File(testDirectory, "limits");
+        write(new File(directory, "a/one.txt"), "1");
+        write(new File(directory, "a/b/two.txt"), "2");
+        write(new File(directory, "a/b/c/three.txt"), "3");
+        new File(directory, "empty").mkdirs();
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.addInclude("**/*.txt");
+
+        FileSetManager fileSetManager = new FileSetManager();
+
+        ScanOptions options = new ScanOptions();
+        options.setMaxDepth(2);
+        assertArrayEquals(
+                new String[] {"a" + File.separator + "one.txt"}, fileSetManager.getIncludedFiles(set, options));
+
+        options.setMaxDepth(Integer.MAX_VALUE);
+        options.setMaxResults(2);
+        assertEquals(2, fileSetManager.getIncludedFiles(set, options).length);
+        assertEquals(3, fileSetManager.getIncludedFiles(set).length);
+
+        assertTrue(fileSetManager.anyIncluded(set));
+        assertTrue(fileSetManager.firstIncluded(set).endsWith(".txt"));
+
+        assertEquals(Arrays.asList(fileSetManager.getIncludedFiles(set)), fileSetManager.getIncludedFileList(set));
+        assertEquals(
+                Arrays.asList(fileSetManager.getIncludedDirectories(set)),
+                fileSetManager.getIncludedDirectoryList(set));
+
+        set.getIncludes().clear();
+        set.addInclude("**/*.log");
+        assertFalse(fileSetManager.anyIncluded(set));
+        assertNull(fileSetManager.firstIncluded(set));
+
+        set.getIncludes().clear();
+        set.addInclude("empty");
+        assertEquals("empty", fileSetManager.firstIncluded(set));
+    }
+
+    @Test
+    void sameEntriesAsDirectoryScanner() throws Exception {
+        File directory = new File(testDirectory, "matrix");
+        write(new File(directory, "README.md"), "readme");
+        write(new File(directory, "notes.txt~"), "backup");
+        write(new File(directory, ".gitignore"), "target/");
+        write(new File(directory, "src/main/.DS_Store"), "finder");
+        write(new File(directory, "src/main/java/Main.java"), "class Main {}");
+        write(new File(directory, "src/main/java/Upper.JAVA"), "class Upper {}");
+        write(new File(directory, "src/main/resources/app.properties"), "key=value");
+        write(new File(directory, "src/test/java/MainTest.java"), "class MainTest {}");
+        write(new File(directory, "src/.svn/entries"), "entries");
+        write(new File(directory, "target/classes/Main.class"), "class");
+        write(new File(directory, "target/build.log"), "log");
+        write(new File(directory, ".git/HEAD"), "ref: refs/heads/main");
+        new File(directory, "empty").mkdirs();
+
+        boolean symlinks = true;
+        try {
+            Files.createSymbolicLink(new File(directory, "linkdir").toPath(), new File(directory, "src/main").toPath());
+            Files.createSymbolicLink(
+                    new File(directory, "linkfile.md").toPath(), new File(directory, "README.md").toPath());
+            Files.createSymbolicLink(
+                    new File(directory, "dangling.txt").toPath(), new File(directory, "missing.txt").toPath());
+        } catch (IOException | SecurityException | UnsupportedOperationException e) {
+            // compared without symbolic links where these are not supported
+            symlinks = false;
+        }
+
+        String[] includes = {
+            null,
+            "**/*.java",
+            "**/*.JAVA",
+            "src/",
+            "src/main/**",
+            "*",
+            "**/java/",
+            "linkdir/**",
+            "%regex[.*\\.java]",
+            "%regex[src/main/.*]"
+        };
+        String[] excludes = {
+            null,
+            "**/test/**",
+            "target/",
+            "**/*.log",
+            "**/README.md",
+            "src/main/java/",
+            "%regex[.*Test\\.java]",
+            "**/linkdir/**"
+        };
+        for (String include : includes) {
+            for (String exclude : excludes) {
+                for (boolean useDefaultExcludes : new boolean[] {true, false}) {
+                    for (boolean followSymlinks : new boolean[] {false, true}) {
+                        FileSet set = new FileSet();
+                        set.setDirectory(directory.getPath());
+                        if (include != null) {
+                            set.addInclude(include);
+                        }
+                        if (exclude != null) {
+                            set.addExclude(exclude);
+                        }
+                        set.setUseDefaultExcludes(useDefaultExcludes);
+                        set.setFollowSymlinks(followSymlinks);
+
+                        DirectoryScanner scanner = new DirectoryScanner();
+                        scanner.setBasedir(directory);
+                        if (include != null) {
+                            scanner.setIncludes(set.getIncludesArray());
+                        }
+                        if (exclude != null) {
+                            scanner.setExcludes(set.getExcludesArray());
+                        }
+                        if (useDefaultExcludes) {
+                            scanner.addDefaultExcludes();
+                        }
+                        scanner.setFollowSymlinks(followSymlinks);
+                        scanner.scan();
+
+                        String message = "include " + include + ", exclude " + exclude + ", default excludes "
+                                + useDefaultExcludes + ", follow symlinks " + followSymlinks + ", symlinks "
+                                + symlinks;
+                        FileSetManager fileSetManager = new FileSetManager();
+                        assertSameEntries(scanner.getIncludedFiles(), fileSetManager.getIncludedFiles(set), message);
+                        assertSameEntries(
+                                scanner.getIncludedDirectories(), fileSetManager.getIncludedDirectories(set), message);
+                        assertSameEntries(scanner.getExcludedFiles(), fileSetManager.getExcludedFiles(set), message);
+                        assertSameEntries(
+                                scanner.getExcludedDirectories(), fileSetManager.getExcludedDirectories(set), message);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void literalExcludes() throws Exception {
+        File directory = new File(testDirectory, "literal");
+        write(new File(directory, ".git/objects/ab/cdef"), "object");
+        write(new File(directory, ".gitignore"), "target/");
+        write(new File(directory, "src/Main.java"), "class Main {}");
+        write(new File(directory, "src/Main.java~"), "backup");
+        write(new File(directory, "src/.svn/entries"), "entries");
+        write(new File(directory, "node_modules/dep/index.js"), "module");
+        write(new File(directory, "lib/node_modules/dep/index.js"), "module");
+
+        for (String include : new String[] {null, "**/*.java", "src/**", "**/node_modules/**"}) {
+            FileSet set = new FileSet();
+            set.setDirectory(directory.getPath());
+            if (include != null) {
+                set.addInclude(include);
+            }
+            set.addExclude("**/node_modules/**");
+            set.addExclude("**/*.js");
+
+            DirectoryScanner scanner = new DirectoryScanner();
+            scanner.setBasedir(directory);
+            if (include != null) {
+                scanner.setIncludes(set.getIncludesArray());
+            }
+            scanner.setExcludes(set.getExcludesArray());
+            scanner.addDefaultExcludes();
+            scanner.setFollowSymlinks(false);
+            scanner.scan();
+
+            FileSetManager fileSetManager = new FileSetManager();
+            assertSameEntries(scanner.getIncludedFiles(), fileSetManager.getIncludedFiles(set));
+            assertSameEntries(scanner.getIncludedDirectories(), fileSetManager.getIncludedDirectories(set));
+            assertSameEntries(scanner.getExcludedFiles(), fileSetManager.getExcludedFiles(set));
+            assertSameEntries(scanner.getExcludedDirectories(), fileSetManager.getExcludedDirectories(set));
+        }
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.addExclude("**/node_modules/**");
+
+        List<String> visited = new ArrayList<>();
+        FileSetManager fileSetManager = new FileSetManager();
+        fileSetManager.setListener(new FileSetListener() {
+            @Override
+            public void directoryVisited(FileSet fileSet, String relativePath) {
+                visited.add(relativePath);
+            }
+        });
+        fileSetManager.getIncludedFiles(set);
+
+        assertFalse(visited.contains(".git"), "excluded directory listed");
+        assertFalse(visited.contains("node_modules"), "excluded directory listed");
+        assertTrue(visited.contains("src"), "included directory not listed");
+    }
+
+    @Test
+    void excludedSubtrees() throws Exception {
+        File directory = new File(testDirectory, "subtrees");
+        write(new File(directory, "src/main/java/Main.java"), "class Main {}");
+        write(new File(directory, "src/main/generated/Generated.java"), "class Generated {}");
+        write(new File(directory, "src/test/generated/GeneratedTest.java"), "class GeneratedTest {}");
+        write(new File(directory, "target/classes/Main.class"), "class");
+        write(new File(directory, "target.txt"), "not below target");
+
+        String[] includes = {null, "**/*.java", "target/classes/**"};
+        // the literal include is looked up without listing any directory
+        int[] prunedDirectories = {3, 3, 0};
+        for (int i = 0; i < includes.length; i++) {
+            String include = includes[i];
+            FileSet set = new FileSet();
+            set.setDirectory(directory.getPath());
+            if (include != null) {
+                set.addInclude(include);
+            }
+            set.addExclude("target/**");
+            set.addExclude("src/*/generated/**");
+
+            DirectoryScanner scanner = new DirectoryScanner();
+            scanner.setBasedir(directory);
+            if (include != null) {
+                scanner.setIncludes(set.getIncludesArray());
+            }
+            scanner.setExcludes(set.getExcludesArray());
+            scanner.addDefaultExcludes();
+            scanner.setFollowSymlinks(false);
+            scanner.scan();
+
+            List<String> visited = new ArrayList<>();
+            AtomicInteger pruned = new AtomicInteger();
+            FileSetManager fileSetManager = new FileSetManager();
+            fileSetManager.setListener(new FileSetListener() {
+                @Override
+                public void directoryVisited(FileSet fileSet, String relativePath) {
+                    visited.add(relativePath.replace(File.separatorChar, '/'));
+                }
+
+                @Override
+                public void scanFinished(
+                        FileSet fileSet,
+                        int visitedDirectories,
+                        int includedEntries,
+                        int excludedEntries,
+                        int prunedDirectories) {
+                    pruned.set(prunedDirectories);
+                }
+            });
+
+            assertSameEntries(scanner.getIncludedFiles(), fileSetManager.getIncludedFiles(set));
+            assertEquals(prunedDirectories[i], pruned.get(), "pruned directories including " + include);
+            assertSameEntries(scanner.getIncludedDirectories(), fileSetManager.getIncludedDirectories(set));
+            assertFalse(visited.contains("target"), "excluded directory listed");
+            assertFalse(visited.contains("src/main/generated"), "excluded directory listed");
+            assertFalse(visited.contains("src/test/generated"), "excluded directory listed");
+
+            assertSameEntries(scanner.getExcludedFiles(), fileSetManager.getExcludedFiles(set));
+            assertSameEntries(scanner.getExcludedDirectories(), fileSetManager.getExcludedDirectories(set));
+            assertTrue(visited.contains("target"), "excluded directory not listed when requested");
+        }
+    }
+
+    @Test
+    void matcher() throws Exception {
+        File directory = new File(testDirectory, "matcher");
+        write(new File(directory, ".git/objects/ab/cdef"), "object");
+        write(new File(directory, "src/main/java/Main.java"), "class Main {}");
+        write(new File(directory, "src/main/java/Main.java~"), "backup");
+        write(new File(directory, "src/test/java/MainTest.java"), "class MainTest {}");
+        write(new File(directory, "node_modules/dep/index.js"), "module");
+        write(new File(directory, "target/classes/Main.class"), "class");
+        write(new File(directory, "README.md"), "readme");
+
+        String[][] includes = {{}, {"**/*.java"}, {"src/main/"}, {"**/node_modules/**", "*.md"}, {"%regex[.*Test.*]"}};
+        String[][] excludes = {{}, {"target/**"}, {"**/node_modules/**", "**/*Test.java"}, {"**/java"}};
+        FileSetManager fileSetManager = new FileSetManager();
+        for (String[] include : includes) {
+            for (String[] exclude : excludes) {
+                FileSet set = new FileSet();
+                set.setDirectory(directory.getPath());
+                set.setIncludes(Arrays.asList(include));
+                set.setExcludes(Arrays.asList(exclude));
+
+                List<String> files = Arrays.asList(fileSetManager.getIncludedFiles(set));
+                List<String> directories = Arrays.asList(fileSetManager.getIncludedDirectories(set));
+                FileSetMatcher matcher = fileSetManager.matcher(set);
+                List<String> expected = new ArrayList<>();
+                List<String> names = new ArrayList<>();
+                for (String name : listTree(directory.toPath())) {
+                    boolean isDirectory = new File(directory, name).isDirectory();
+                    String message = name + " included by " + set.getIncludes() + " excluded by " + set.getExcludes();
+                    boolean included = isDirectory
+                            ? directories.contains(name.replace('/', File.separatorChar))
+                            : files.contains(name.replace('/', File.separatorChar));
+                    assertEquals(included, matcher.matches(name, isDirectory), message);
+                    if (isDirectory && !name.isEmpty()) {
+                        assertEquals(included, matcher.matches(name + '/', true), message);
+                    } else {
+                        names.add(name);
+                        if (included) {
+                            expected.add(name);
+                        }
+                    }
+                }
+                assertEquals(expected, matcher.matchAll(names));
+            }
+        }
+
+        // the selectors are not applied, so they need not be valid
+        FileSet set = new FileSet();
+        set.addInclude("**/*.java");
+        set.setMinSize("not a size");
+        set.setModifiedBefore("not a time");
+        FileSetMatcher matcher = fileSetManager.matcher(set);
+        assertTrue(matcher.matches("src/Main.java", false));
+        assertFalse(matcher.matches("README.md", false));
+    }
+
+    @Test
+    void literalIncludes() throws Exception {
+        File directory = new File(testDirectory, "literal");
+        write(new File(directory, "pom.xml"), "<project/>");
+        write(new File(directory, "src/main/java/Main.java"), "class Main {}");
+        write(new File(directory, "src/main/java/debug.log"), "log");
+        write(new File(directory, "src/test/java/MainTest.java"), "class MainTest {}");
+        write(new File(directory, "META-INF/MANIFEST.MF"), "Manifest-Version: 1.0");
+        write(new File(directory, "other/deep/file.txt"), "other");
+
+        String[][] includeSets = {
+            {"pom.xml"},
+            {"pom.xml", "src/main/"},
+            {"src/main/java/Main.java", "src/**", "META-INF/MANIFEST.MF"},
+            {"src/main/java/debug.log"},
+            {"missing.txt", "pom.xml/below", "other"}
+        };
+        for (String[] includes : includeSets) {
+            FileSet set = new FileSet();
+            set.setDirectory(directory.getPath());
+            for (String include : includes) {
+                set.addInclude(include);
+            }
+            set.addExclude("**/*.log");
+
+            DirectoryScanner scanner = new DirectoryScanner();
+            scanner.setBasedir(directory);
+            scanner.setIncludes(set.getIncludesArray());
+            scanner.setExcludes(set.getExcludesArray());
+            scanner.addDefaultExcludes();
+            scanner.setFollowSymlinks(false);
+            scanner.scan();
+
+            FileSetManager fileSetManager = new FileSetManager();
+            assertSameEntries(scanner.getIncludedFiles(), fileSetManager.getIncludedFiles(set));
+            assertSameEntries(scanner.getIncludedDirectories(), fileSetManager.getIncludedDirectories(set));
+            assertSameEntries(scanner.getExcludedFiles(), fileSetManager.getExcludedFiles(set));
+            assertSameEntries(scanner.getExcludedDirectories(), fileSetManager.getExcludedDirectories(set));
+        }
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.addInclude("pom.xml");
+        set.addInclude("src/main/**");
+        set.addExclude("**/*.log");
+
+        List<String> visited = new ArrayList<>();
+        FileSetManager fileSetManager = new FileSetManager();
+        fileSetManager.setListener(new FileSetListener() {
+            @Override
+            public void directoryVisited(FileSet fileSet, String relativePath) {
+                visited.add(relativePath);
+            }
+        });
+
+        assertSameEntries(
+                new String[] {"pom.xml", "src/main/java/Main.java".replace('/', File.separatorChar)},
+                fileSetManager.getIncludedFiles(set));
+        assertEquals(
+                Arrays.asList(
+                        "src/main".replace('/', File.separatorChar), "src/main/java".replace('/', File.separatorChar)),
+                visited);
+    }
+
+    @Test
+    void gitIndex() throws Exception {
+        File repository = new File(testDirectory, "repository");
+        write(new File(repository, "README.md"), "readme");
+        write(new File(repository, "pom.xml"), "<project/>");
+        write(new File(repository, "src/main/java/org/example/Main.java"), "class Main {}");
+        write(new File(repository, "src/test/java/org/example/MainTest.java"), "class MainTest {}");
+        write(new File(repository, "src/main/java/org/example/Untracked.java"), "class Untracked {}");
+        write(new File(repository, "target/classes/org/example/Main.class"), "class");
+        new File(repository, ".git").mkdirs();
+        Files.copy(GitIndexTest.fixture("index-v2"), new File(repository, ".git/index").toPath());
+
+        List<String> visited = new ArrayList<>();
+        FileSetManager fileSetManager = new FileSetManager();
+        fileSetManager.setListener(new FileSetListener() {
+            @Override
+            public void directoryVisited(FileSet fileSet, String relativePath) {
+                visited.add(relativePath);
+            }
+        });
+
+        FileSet set = new FileSet();
+        set.setDirectory(repository.getPath());
+        set.setUseGitIndex(true);
+        set.addExclude("**/*Test.java");
+
+        assertSameEntries(
+                new String[] {
+                    "README.md", "pom.xml", "src/main/java/org/example/Main.java".replace('/', File.separatorChar)
+                },
+                fileSetManager.getIncludedFiles(set));
+        assertTrue(visited.isEmpty(), "directories listed: " + visited);
+
+        // the excluded files are listed by walking the directory
+        assertSameEntries(
+                new String[] {
+                    ".git/index".replace('/', File.separatorChar),
+                    "src/test/java/org/example/MainTest.java".replace('/', File.separatorChar)
+                },
+                fileSetManager.getExcludedFiles(set));
+        assertFalse(visited.isEmpty());
+
+        set.setDirectory(new File(repository, "src/main").getPath());
+        set.addInclude("**/*.java");
+        assertSameEntries(
+                new String[] {"java/org/example/Main.java".replace('/', File.separatorChar)},
+                fileSetManager.getIncludedFiles(set));
+
+        // walked without an index
+        new File(repository, ".git/index").delete();
+        assertSameEntries(
+                new String[] {
+                    "java/org/example/Main.java".replace('/', File.separatorChar),
+                    "java/org/example/Untracked.java".replace('/', File.separatorChar)
+                },
+                fileSetManager.getIncludedFiles(set));
+    }
+
+    @Test
+    void gitIgnore() throws Exception {
+        File repository = new File(testDirectory, "repository");
+        new File(repository, ".git").mkdirs();
+        write(new File(repository, ".gitignore"), "# build output\n*.log\n!keep.log\n/build\n");
+        write(new File(repository, "module/.gitignore"), "target/\nlocal-*.txt\n");
+        write(new File(repository, "module/src/Main.java"), "class Main {}");
+        write(new File(repository, "module/keep.log"), "kept");
+        write(new File(repository, "module/debug.log"), "ignored");
+        write(new File(repository, "module/local-settings.txt"), "ignored");
+        write(new File(repository, "module/target/classes/Main.class"), "ignored");
+        write(new File(repository, "module/build/generated.txt"), "not anchored at the root");
+        write(new File(repository, "build/output.txt"), "ignored");
+
+        FileSet set = new FileSet();
+        set.setDirectory(repository.getPath());
+        set.setUseGitIgnore(true);
+
+        String[] files = new FileSetManager().getIncludedFiles(set);
+        Arrays.sort(files);
+        assertArrayEquals(
+                new String[] {"module/build/generated.txt", "module/keep.log", "module/src/Main.java"},
+                toSlashes(files));
+
+        set.setDirectory(new File(repository, "module").getPath());
+        files = new FileSetManager().getIncludedFiles(set);
+        Arrays.sort(files);
+        assertArrayEquals(new String[] {"build/generated.txt", "keep.log", "src/Main.java"}, toSlashes(files));
+
+        // the rules of the base directory itself are loaded by the scan, not as rules of a parent
+        Path root = repository.toPath().toAbsolutePath();
+        assertNull(GitIgnore.loadParents(root, root));
+        GitIgnore parents = GitIgnore.loadParents(root, root.resolve("module"));
+        assertTrue(parents.isIgnored("module/debug.log", false));
+        assertFalse(parents.isIgnored("module/local-settings.txt", false));
+    }
+
+    @Test
+    void concurrentScansOfEqualFileSetsAreShared() throws Exception {
+        File directory = new File(testDirectory, "shared");
+        write(new File(directory, "a/one.txt"), "one");
+        write(new File(directory, "b/two.txt"), "two");
+
+        AtomicInteger scans = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        FileSetManager fileSetManager = new FileSetManager();
+        fileSetManager.setListener(new FileSetListener() {
+            @Override
+            public void scanStarted(FileSet fileSet) {
+                if (scans.incrementAndGet() == 1) {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+
+        List<String[]> results = Collections.synchronizedList(new ArrayList<>());
+        Runnable request = () -> {
+            FileSet set = new FileSet();
+            set.setDirectory(directory.getPath());
+            set.addInclude("**/*.txt");
+            results.add(fileSetManager.getIncludedFiles(set));
+        };
+        Thread first = new Thread(request);
+        first.start();
+        while (scans.get() == 0) {
+            Thread.sleep(1);
+        }
+        Thread second = new Thread(request);
+        second.start();
+        while (second.getState() != Thread.State.WAITING && second.isAlive()) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        first.join();
+        second.join();
+
+        assertEquals(1, scans.get());
+        assertEquals(2, results.size());
+        assertSameEntries(results.get(0), results.get(1));
+        assertEquals(2, results.get(0).length);
+        assertTrue(results.get(0) != results.get(1));
+
+        // finished scans are not cached
+        request.run();
+        assertEquals(2, scans.get());
+    }
+
+    @Test
+    void symlinkCycles() throws Exception {
+        File directory = new File(testDirectory, "cycles");
+        write(new File(directory, "a/one.txt"), "one");
+        write(new File(directory, "b/two.txt"), "two");
+        createSymlink(directory, new File(directory, "a/loop"));
+        createSymlink(new File(directory, "a"), new File(directory, "a/self"));
+        createSymlink(new File(directory, "a"), new File(directory, "b/shared"));
+
+        List<String> cycles = Collections.synchronizedList(new ArrayList<>());
+        FileSetManager fileSetManager = new FileSetManager();
+        fileSetManager.setListener(new FileSetListener() {
+            @Override
+            public void cycleDetected(FileSet fileSet, String relativePath, String ancestorPath) {
+                cycles.add(toSlashes(new String[] {relativePath})[0] + " -> " + ancestorPath.replace('\\', '/'));
+            }
+        });
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.setFollowSymlinks(true);
+
+        assertSameEntries(
+                new String[] {"a/one.txt", "b/shared/one.txt", "b/two.txt"},
+                toSlashes(fileSetManager.getIncludedFiles(set)));
+        cycles.clear();
+        assertSameEntries(
+                new String[] {"", "a", "a/loop", "a/self", "b", "b/shared", "b/shared/loop", "b/shared/self"},
+                toSlashes(fileSetManager.getIncludedDirectories(set)));
+        assertSameEntries(
+                new String[] {"a/loop -> ", "a/self -> a", "b/shared/loop -> ", "b/shared/self -> b/shared"},
+                cycles.toArray(new String[0]));
+
+        cycles.clear();
+        assertEquals(3, fileSetManager.stats(set).getFileCount());
+        assertEquals(4, cycles.size());
+
+        set.setFollowSymlinks(false);
+        assertSameEntries(new String[] {"a/one.txt", "b/two.txt"}, toSlashes(fileSetManager.getIncludedFiles(set)));
+
+        set.setFollowSymlinks(true);
+        cycles.clear();
+        fileSetManager.delete(set);
+        assertFalse(directory.exists());
+        assertFalse(cycles.isEmpty());
+    }
+
+    @Test
+    void zipFileSystem() throws Exception {
+        File archive = new File(testDirectory, "archive.jar");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive.toPath()))) {
+            for (String name : new String[] {
+                "META-INF/MANIFEST.MF",
+                "org/example/Main.class",
+                "org/example/internal/Helper.class",
+                "org/example/.svn/entries",
+                "org/example/messages.properties"
+            }) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(name.getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+
+        FileSet set = new FileSet();
+        set.addInclude("org/");
+        set.addExclude("**/internal/**");
+
+        FileSetManager fileSetManager = new FileSetManager();
+        try (FileSystem fileSystem = FileSystems.newFileSystem(archive.toPath(), (ClassLoader) null)) {
+            Path root = fileSystem.getPath("/");
+
+            assertSameEntries(
+                    new String[] {"org/example/Main.class", "org/example/messages.properties"},
+                    toSlashes(fileSetManager.getIncludedFiles(root, set)));
+            assertSameEntries(
+                    new String[] {"org", "org/example"}, toSlashes(fileSetManager.getIncludedDirectories(root, set)));
+            assertSameEntries(
+                    new String[] {"org/example/.svn/entries", "org/example/internal/Helper.class"},
+                    toSlashes(fileSetManager.getExcludedFiles(root, set)));
+            assertSameEntries(
+                    new String[] {"org/example/.svn", "org/example/internal"},
+                    toSlashes(fileSetManager.getExcludedDirectories(root, set)));
+
+            set.getIncludes().clear();
+            set.addInclude("**/*.class");
+            assertArrayEquals(
+                    new String[] {"example/Main.class"},
+                    toSlashes(fileSetManager.getIncludedFiles(fileSystem.getPath("/org"), set)));
+        }
+    }
+
+    @Test
+    void diff() throws Exception {
+        File left = new File(testDirectory, "left");
+        File right = new File(testDirectory, "right");
+        for (File directory : new File[] {left, right}) {
+            write(new File(directory, "same.txt"), "same");
+            write(new File(directory, "touched.txt"), "touched");
+            new File(directory, "same.txt").setLastModified(1700000000000L);
+        }
+        new File(right, "touched.txt").setLastModified(1600000000000L);
+        write(new File(left, "edited.txt"), "before");
+        write(new File(right, "edited.txt"), "after!");
+        new File(right, "edited.txt").setLastModified(1600000000000L);
+        write(new File(left, "grown.txt"), "small");
+        write(new File(right, "grown.txt"), "larger");
+        write(new File(left, "removed.txt"), "removed");
+        write(new File(right, "added/file.txt"), "added");
+        write(new File(left, "kind"), "file");
+        new File(right, "kind").mkdirs();
+
+        FileSet leftSet = new FileSet();
+        leftSet.setDirectory(left.getPath());
+        FileSet rightSet = new FileSet();
+        rightSet.setDirectory(right.getPath());
+
+        FileSetManager fileSetManager = new FileSetManager();
+        FileSetDiff diff = fileSetManager.diff(leftSet, rightSet, new DiffOptions());
+        assertEquals(Arrays.asList("removed.txt"), diff.getOnlyLeft());
+        assertEquals(Arrays.asList("added", "added" + File.separator + "file.txt"), diff.getOnlyRight());
+        assertEquals(Arrays.asList("edited.txt", "grown.txt", "kind"), diff.getChanged());
+        assertFalse(diff.isEmpty());
+
+        DiffOptions metadataOnly = new DiffOptions();
+        metadataOnly.setCompareContent(false);
+        diff = fileSetManager.diff(leftSet, rightSet, metadataOnly);
+        assertEquals(Arrays.asList("edited.txt", "grown.txt", "kind", "touched.txt"), diff.getChanged());
+
+        assertTrue(fileSetManager.diff(leftSet, leftSet, new DiffOptions()).isEmpty());
+
+        // a failure is reported against the file-set of the file which could not be read
+        File unreadable = new File(right, "touched.txt");
+        assumeTrue(unreadable.setReadable(false) && !Files.isReadable(unreadable.toPath()));
+        List<FileSet> failed = new ArrayList<>();
+        fileSetManager.setListener(new FileSetListener() {
+            @Override
+            public void failed(FileSet fileSet, String path, String message) {
+                failed.add(fileSet);
+            }
+        });
+        try {
+            assertThrows(IOException.class, () -> fileSetManager.diff(leftSet, rightSet, new DiffOptions()));
+            assertEquals(Arrays.asList(rightSet), failed);
+        } finally {
+            unreadable.setReadable(true);
+        }
+    }
+
+    @Test
+    void applyModes() throws Exception {
+        File directory = new File(testDirectory, "modes");
+        write(new File(directory, "bin/run.sh"), "#!/bin/sh");
+        write(new File(directory, "bin/correct.txt"), "correct");
+        write(new File(directory, "lib/readable.txt"), "readable");
+        assumeTrue(Files.getFileAttributeView(directory.toPath(), PosixFileAttributeView.class) != null);
+        Files.setPosixFilePermissions(
+                new File(directory, "bin/correct.txt").toPath(), PosixFilePermissions.fromString("rw-r-----"));
+        Files.setPosixFilePermissions(
+                new File(directory, "bin").toPath(), PosixFilePermissions.fromString("rwxr-x---"));
+        createSymlink(new File(directory, "lib/readable.txt"), new File(directory, "link.txt"));
+        Files.setPosixFilePermissions(
+                new File(directory, "lib/readable.txt").toPath(), PosixFilePermissions.fromString("rw-rw-rw-"));
+        Files.setPosixFilePermissions(directory.toPath(), PosixFilePermissions.fromString("rwx------"));
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.setFileMode("0640");
+        set.setDirectoryMode("0750");
+
+        FileSetManager fileSetManager = new FileSetManager();
+        FileSetModeResult result = fileSetManager.applyModes(set);
+
+        // the base directory, run.sh, readable.txt and lib changed, correct.txt and bin were correct, the link is
+        // skipped
+        assertEquals(4, result.getChangedEntries());
+        assertEquals(2, result.getUnchangedEntries());
+        for (String file : new String[] {"bin/run.sh", "bin/correct.txt", "lib/readable.txt"}) {
+            assertEquals(
+                    "rw-r-----",
+                    PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(directory, file).toPath())));
+        }
+        for (String dir : new String[] {"", "lib"}) {
+            assertEquals(
+                    "rwxr-x---",
+                    PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(directory, dir).toPath())));
+        }
+
+        result = fileSetManager.applyModes(set);
+        assertEquals(0, result.getChangedEntries());
+        assertEquals(6, result.getUnchangedEntries());
+
+        // the base directory is left alone unless included
+        Files.setPosixFilePermissions(directory.toPath(), PosixFilePermissions.fromString("rwx------"));
+        set.addInclude("bin/**");
+        fileSetManager.applyModes(set);
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory.toPath())));
+        set.getIncludes().clear();
+
+        set.setFileMode("0x");
+        assertThrows(IllegalArgumentException.class, () -> fileSetManager.applyModes(set));
+    }
+
+    private static String[] toSlashes(String[] paths) {
+        String[] result = new String[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            result[i] = paths[i].replace(File.separatorChar, '/');
+        }
+        return result;
+    }
+
+    private static FileSet fileSet(File directory) {
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.addExclude("**/*.log");
+        return set;
+    }
+
+    private static List<String> listTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.map(path -> root.relativize(path).toString().replace(File.separatorChar, '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void assertSameEntries(String[] expected, String[] actual) {
+        Arrays.sort(expected);
+        Arrays.sort(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    private static void assertSameEntries(String[] expected, String[] actual, String message) {
+        Arrays.sort(expected);
+        Arrays.sort(actual);
+        assertEquals(Arrays.asList(expected), Arrays.asList(actual), message);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
     private void createSymlink(File target, File link) {
         if (link.exists()) {
             link.delete();
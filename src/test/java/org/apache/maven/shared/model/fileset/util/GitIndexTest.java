@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test the GitIndex, on index files written by Git.
+ */
+class GitIndexTest {
+    @TempDir
+    File testDirectory;
+
+    @Test
+    void readPaths() throws Exception {
+        assertEquals(
+                Arrays.asList(
+                        "README.md",
+                        "pom.xml",
+                        "src/main/java/org/example/Main.java",
+                        "src/test/java/org/example/MainTest.java"),
+                GitIndex.readPaths(fixture("index-v2"), 20));
+
+        // README.md is excluded from the sparse checkout, notes.txt has been added with --intent-to-add
+        for (String name : new String[] {"index-v3", "index-v4"}) {
+            assertEquals(
+                    Arrays.asList(
+                            "notes.txt",
+                            "pom.xml",
+                            "src/main/java/org/example/Main.java",
+                            "src/test/java/org/example/MainTest.java"),
+                    GitIndex.readPaths(fixture(name), 20),
+                    name);
+        }
+    }
+
+    @Test
+    void corrupt() throws Exception {
+        byte[] index = Files.readAllBytes(fixture("index-v4"));
+
+        Path truncated = new File(testDirectory, "truncated").toPath();
+        Files.write(truncated, Arrays.copyOf(index, 100));
+        assertThrows(IOException.class, () -> GitIndex.readPaths(truncated, 20));
+
+        Path unsupported = new File(testDirectory, "unsupported").toPath();
+        index[7] = 5;
+        Files.write(unsupported, index);
+        assertThrows(IOException.class, () -> GitIndex.readPaths(unsupported, 20));
+    }
+
+    @Test
+    void locate() throws Exception {
+        File root = new File(testDirectory, "worktree");
+        assertNull(GitIndex.locate(root.toPath()));
+
+        File gitDir = new File(testDirectory, "repo.git/worktrees/worktree");
+        gitDir.mkdirs();
+        Files.copy(fixture("index-v2"), new File(gitDir, "index").toPath());
+        root.mkdirs();
+        Files.write(new File(root, ".git").toPath(), ("gitdir: " + gitDir.getAbsolutePath() + "\n").getBytes());
+
+        assertEquals(new File(gitDir, "index").toPath(), GitIndex.locate(root.toPath()));
+        assertEquals(20, GitIndex.hashLength(root.toPath()));
+    }
+
+    static Path fixture(String name) throws Exception {
+        return Paths.get(GitIndexTest.class.getResource("/gitIndex/" + name).toURI());
+    }
+}
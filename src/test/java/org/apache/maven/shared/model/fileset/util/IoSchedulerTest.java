@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the IoScheduler
+ */
+class IoSchedulerTest {
+    @TempDir
+    File testDirectory;
+
+    @Test
+    void maxConcurrency() throws Exception {
+        IoOptions options = new IoOptions();
+        options.setMaxConcurrency(2);
+        IoScheduler scheduler = new IoScheduler(options);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> done = Collections.synchronizedList(new ArrayList<>());
+        scheduler.run(testDirectory.toPath(), items(20), item -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            done.add(item);
+            return 0;
+        });
+
+        assertEquals(20, done.size());
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    void sequential() throws Exception {
+        assertEquals(Runtime.getRuntime().availableProcessors(), new IoOptions().getMaxConcurrency());
+
+        IoOptions options = new IoOptions();
+        options.setMaxConcurrency(1);
+        Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+        new IoScheduler(options).run(testDirectory.toPath(), items(20), item -> {
+            threads.add(Thread.currentThread());
+            return 0;
+        });
+
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
+
+    @Test
+    void scanPool() throws Exception {
+        IoOptions options = new IoOptions();
+        options.setMaxConcurrency(1);
+        assertNull(new IoScheduler(options).scanPool(testDirectory.toPath()));
+
+        options.setMaxConcurrency(3);
+        IoScheduler scheduler = new IoScheduler(options);
+        ForkJoinPool pool = scheduler.scanPool(testDirectory.toPath());
+        assertEquals(3, pool.getParallelism());
+        // shared by the directories of the same file store
+        assertSame(pool, scheduler.scanPool(new File(testDirectory, "missing").toPath()));
+    }
+
+    @Test
+    void rateLimits() throws Exception {
+        IoOptions options = new IoOptions();
+        options.setMaxOperationsPerSecond(200);
+        long start = System.nanoTime();
+        new IoScheduler(options).run(testDirectory.toPath(), items(21), item -> 0);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+
+        options = new IoOptions();
+        options.setMaxConcurrency(1);
+        options.setMaxBytesPerSecond(1000);
+        start = System.nanoTime();
+        new IoScheduler(options).run(testDirectory.toPath(), items(3), item -> 50);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+    }
+
+    @Test
+    void failure() {
+        IoOptions options = new IoOptions();
+        options.setMaxConcurrency(1);
+        AtomicInteger started = new AtomicInteger();
+        IOException failure = assertThrows(IOException.class, () -> new IoScheduler(options)
+                .run(new File(testDirectory, "not/yet/created").toPath(), items(10), item -> {
+                    started.incrementAndGet();
+                    if (item == 3) {
+                        throw new IOException("item " + item);
+                    }
+                    return 0;
+                }));
+
+        assertEquals("item 3", failure.getMessage());
+        assertEquals(4, started.get());
+    }
+
+    private static List<Integer> items(int count) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the PathList
+ */
+class PathListTest {
+    @Test
+    void roundTrip() {
+        List<String> paths = new ArrayList<>();
+        paths.add("");
+        for (int i = 0; i < 100; i++) {
+            paths.add("src/main/java/org/example/pkg" + (i / 10) + "/Class" + i + ".java");
+        }
+        paths.add("src/main/resources/été/日本.properties");
+        paths.add("src/main/resources/été/日本語.properties");
+        paths.add("a");
+
+        PathList.Builder builder = new PathList.Builder();
+        for (String path : paths) {
+            builder.add(path);
+        }
+        PathList list = builder.build();
+
+        assertEquals(paths, list);
+        assertEquals(paths.size(), list.size());
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            assertEquals(paths.get(i), list.get(i));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(paths.size()));
+
+        long stringBytes = 0;
+        for (String path : paths) {
+            stringBytes += path.length();
+        }
+        assertTrue(list.getEncodedSize() < stringBytes / 2, "paths not front-coded");
+    }
+
+    @Test
+    void paths() {
+        PathList list = new PathList.Builder().add("a").add("a/b").add("c").build();
+
+        Path basedir = Paths.get("base");
+        List<Path> resolved = new ArrayList<>();
+        list.paths(basedir).forEach(resolved::add);
+
+        assertEquals(3, resolved.size());
+        assertEquals(basedir.resolve("a/b"), resolved.get(1));
+    }
+
+    @Test
+    void empty() {
+        assertTrue(PathList.empty().isEmpty());
+        assertEquals(0, new PathList.Builder().build().size());
+    }
+}
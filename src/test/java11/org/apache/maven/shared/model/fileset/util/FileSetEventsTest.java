@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.shared.model.fileset.util;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.maven.shared.model.fileset.FileSet;
+import org.apache.maven.shared.model.fileset.Mapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the Java Flight Recorder events, run against the classes of the multi-release JAR for Java 11.
+ */
+class FileSetEventsTest {
+    @TempDir
+    File testDirectory;
+
+    @Test
+    void events() throws Exception {
+        File directory = new File(testDirectory, "source");
+        write(new File(directory, "a/one.txt"));
+        write(new File(directory, "a/two.txt"));
+        write(new File(directory, "b/three.log"));
+
+        FileSet set = new FileSet();
+        set.setDirectory(directory.getPath());
+        set.addInclude("**/*.txt");
+        set.addExclude("**/two.txt");
+        Mapper mapper = new Mapper();
+        mapper.setType("flatten");
+        set.setMapper(mapper);
+
+        // scanned below another base directory than the one of the file-set
+        File copy = new File(testDirectory, "copy");
+        write(new File(copy, "a/one.txt"));
+
+        FileSetManager fileSetManager = new FileSetManager();
+        Path recordingFile = new File(testDirectory, "recording.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable("org.apache.maven.fileset.Scan");
+            recording.enable("org.apache.maven.fileset.Delete");
+            recording.enable("org.apache.maven.fileset.Mapping");
+            recording.start();
+
+            fileSetManager.getIncludedFiles(copy.toPath(), set);
+            fileSetManager.mapIncludedFiles(set);
+            fileSetManager.delete(set);
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> scans = new ArrayList<>();
+        List<RecordedEvent> mappings = new ArrayList<>();
+        List<RecordedEvent> deletions = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+            String name = event.getEventType().getName();
+            if (name.equals("org.apache.maven.fileset.Scan")) {
+                scans.add(event);
+            } else if (name.equals("org.apache.maven.fileset.Mapping")) {
+                mappings.add(event);
+            } else if (name.equals("org.apache.maven.fileset.Delete")) {
+                deletions.add(event);
+            }
+        }
+
+        assertTrue(scans.size() >= 2, "scans: " + scans);
+        RecordedEvent scan = scans.get(0);
+        assertEquals(copy.getPath(), scan.getString("directory"));
+        assertEquals(1, scan.getInt("includes"));
+        assertEquals(1, scan.getInt("excludes"));
+        assertEquals(1, scan.getInt("includedEntries"));
+        assertTrue(scan.getInt("visitedDirectories") >= 1);
+        assertEquals(directory.getPath(), scans.get(1).getString("directory"));
+        assertEquals(1, scans.get(1).getInt("includedEntries"));
+        assertEquals(1, scans.get(1).getInt("excludedEntries"));
+
+        assertEquals(1, mappings.size());
+        assertEquals(directory.getPath(), mappings.get(0).getString("directory"));
+        assertEquals("flatten", mappings.get(0).getString("mapper"));
+        assertEquals(1, mappings.get(0).getInt("mappedFiles"));
+
+        assertEquals(1, deletions.size());
+        assertEquals(directory.getPath(), deletions.get(0).getString("directory"));
+        assertEquals(1, deletions.get(0).getInt("deletablePaths"));
+    }
+
+    private static void write(File file) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), file.getName().getBytes(StandardCharsets.UTF_8));
+    }
+}